@@ -0,0 +1,102 @@
+package de.ait.training.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.controller.ReactiveCarHandler;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * Профиль reactive: неблокирующий вариант API чтения автомобилей рядом с обычным MVC.
+ * <p>
+ * Основное приложение остается на Tomcat, а эти эндпоинты поднимаются на отдельном сервере
+ * Reactor Netty (cars.reactive.port) с теми же путями /api/cars/**. Доступ к базе - через R2DBC
+ * со своим пулом соединений (cars.reactive.r2dbc.*), автоконфигурация R2DBC Spring Boot выключена
+ * в application.properties, чтобы не мешать JPA. Пул доступен только через DatabaseClient.
+ */
+@Slf4j
+@Configuration
+@Profile("reactive")
+public class ReactiveCarApiConfig {
+
+    // пул не регистрируется бином ConnectionFactory: увидев такой бин, DataSourceAutoConfiguration
+    // отключается, и JPA остается без DataSource
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient(
+            @Value("${cars.reactive.r2dbc.url}") String url,
+            @Value("${cars.reactive.r2dbc.username}") String username,
+            @Value("${cars.reactive.r2dbc.password}") String password,
+            @Value("${cars.reactive.r2dbc.pool-size:20}") int poolSize
+    ) {
+        ConnectionFactory connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(Math.min(poolSize, 5))
+                .maxSize(poolSize)
+                .maxIdleTime(Duration.ofMinutes(30))
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> reactiveCarRoutes(ReactiveCarHandler handler) {
+        return RouterFunctions.route()
+                .path("/api/cars", builder -> builder
+                        .GET("", handler::getCars)
+                        .GET("/color/{color}", handler::getCarsByColor)
+                        .GET("/price/between/{min}/{max}", handler::getCarsByPriceBetween)
+                        .GET("/price/under/{max}", handler::getCarsByPriceLessThanEqual)
+                        .GET("/price/over/{min}", handler::getCarsByPriceGreaterThan))
+                .onError(NumberFormatException.class, (e, request) -> ServerResponse.badRequest().build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "disposeNow")
+    public DisposableServer reactiveCarServer(RouterFunction<ServerResponse> reactiveCarRoutes,
+                                              ObjectMapper objectMapper,
+                                              @Value("${cars.reactive.port:8081}") int port) {
+        // тот же ObjectMapper, что у MVC, чтобы JSON не отличался
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        ReactorHttpHandlerAdapter adapter =
+                new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(reactiveCarRoutes, strategies));
+        DisposableServer server = HttpServer.create().port(port).handle(adapter).bindNow();
+        log.info("Reactive cars API started on port {}", server.port());
+        return server;
+    }
+
+    @PreDestroy
+    void disposeConnectionPool() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package de.ait.training.controller;
+
+import de.ait.training.service.CarImageStore;
+import de.ait.training.service.CarService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Раздача картинок автомобилей: GET /images/{fileName}
+ * <p>
+ * В отличие от общего обработчика статики:
+ * - Cache-Control immutable на год, имена файлов уникальны и не переиспользуются
+ * - сильный ETag и ответ 304 на If-None-Match
+ * - Range-запросы (один диапазон, 206 Partial Content)
+ * - популярные небольшие картинки отдаются из памяти (CarImageStore)
+ * - большие файлы отдаются через Tomcat sendfile без копирования в память приложения
+ */
+@Slf4j
+@RestController
+public class CarImageController {
+
+    private static final String CACHE_CONTROL = "public, max-age=" + TimeUnit.DAYS.toSeconds(365) + ", immutable";
+
+    // атрибуты запроса, по которым Tomcat NIO отдает файл через sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final CarImageStore imageStore;
+
+    public CarImageController(CarImageStore imageStore) {
+        this.imageStore = imageStore;
+    }
+
+    @GetMapping("/" + CarService.IMAGES_PATH + "{fileName}")
+    public void getImage(@PathVariable String fileName,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CarImageStore.ImageFile file = imageStore.find(fileName);
+        if (file == null) {
+            log.warn("Image {} not found", fileName);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ETAG, file.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(file.etag()) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(fileName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start = 0;
+        long end = file.size() - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range с другим ETag - картинка изменилась, отдаем целиком
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(file.etag()))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // несколько диапазонов сразу не поддерживаем, по RFC 9110 можно отдать весь файл
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(file.size());
+                    end = range.getRangeEnd(file.size());
+                } catch (IllegalArgumentException e) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size());
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.size());
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (file.content() != null) {
+            response.getOutputStream().write(file.content(), (int) start, (int) length);
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // тело запишет сам Tomcat после выхода из контроллера
+            request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, target);
+            }
+        }
+    }
+}
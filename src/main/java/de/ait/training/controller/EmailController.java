@@ -1,11 +1,18 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.EmailCampaignRequest;
+import de.ait.training.dto.EmailCampaignStatusDto;
+import de.ait.training.service.EmailCampaignService;
 import de.ait.training.service.EmailService;
 import jakarta.validation.constraints.Email;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -19,6 +26,7 @@ import java.util.Map;
 public class EmailController {
 
     private final EmailService emailService;
+    private final EmailCampaignService campaignService;
 
     @PostMapping("/service")
     public ResponseEntity<String> sendEmailToService(@RequestParam @Email String emailTo) {
@@ -28,6 +36,39 @@ public class EmailController {
                 "promoCode", "AIT-223344"
         );
         emailService.sendTemplateEmail(emailTo, "Car service time", "email/CarService",map);
-        return ResponseEntity.ok("Email sent to" + emailTo);
+        return new ResponseEntity<>("Email queued for " + emailTo, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Запускает рассылку по шаблону на список получателей, письма отправляются в фоне
+     *
+     * @return id рассылки для GET /api/email/campaigns/{id}
+     */
+    @PostMapping("/campaigns")
+    public ResponseEntity<String> startCampaign(@RequestBody EmailCampaignRequest request) {
+        if (request.getTemplate() == null || request.getRecipients() == null || request.getRecipients().isEmpty()) {
+            log.error("Campaign template and recipients must be set");
+            return new ResponseEntity<>("Template and recipients must be set", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            String id = campaignService.startCampaign(request);
+            return new ResponseEntity<>(id, HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid campaign: {}", e.getMessage());
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @return сколько писем отправлено, сколько с ошибкой и какие адреса не прошли
+     */
+    @GetMapping("/campaigns/{id}")
+    public ResponseEntity<EmailCampaignStatusDto> getCampaign(@PathVariable String id) {
+        EmailCampaignStatusDto status = campaignService.getStatus(id);
+        if (status == null) {
+            log.warn("Campaign {} not found", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(status, HttpStatus.OK);
     }
 }
@@ -0,0 +1,85 @@
+package de.ait.training.controller;
+
+import de.ait.training.model.Car;
+import de.ait.training.repository.ReactiveCarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Реактивный вариант эндпоинтов чтения RestApiCarController (профиль reactive, отдельный порт Netty).
+ * <p>
+ * Ответ отдается потоком: JSON-массив по умолчанию или application/x-ndjson (по автомобилю в строке),
+ * если клиент его запросил в Accept. Следующие строки читаются из базы по мере отправки клиенту.
+ * В отличие от MVC, пустой результат - 200 и пустой массив: статус уходит клиенту
+ * до того, как прочитана первая строка.
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+public class ReactiveCarHandler {
+
+    private final ReactiveCarRepository repository;
+
+    public ReactiveCarHandler(ReactiveCarRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * GET /api/cars
+     */
+    public Mono<ServerResponse> getCars(ServerRequest request) {
+        return stream(request, repository.findAll());
+    }
+
+    /**
+     * GET /api/cars/color/{color}
+     */
+    public Mono<ServerResponse> getCarsByColor(ServerRequest request) {
+        String color = request.pathVariable("color").trim().toLowerCase(Locale.ROOT);
+        return stream(request, repository.findByColorIgnoreCase(color));
+    }
+
+    /**
+     * GET /api/cars/price/between/{min}/{max}
+     */
+    public Mono<ServerResponse> getCarsByPriceBetween(ServerRequest request) {
+        Double min = Double.valueOf(request.pathVariable("min"));
+        Double max = Double.valueOf(request.pathVariable("max"));
+        if (max < min) {
+            log.error("Max price must be greater than min");
+            return ServerResponse.badRequest().contentType(MediaType.APPLICATION_JSON).bodyValue(List.of());
+        }
+        return stream(request, repository.findByPriceBetween(min, max));
+    }
+
+    /**
+     * GET /api/cars/price/under/{max}
+     */
+    public Mono<ServerResponse> getCarsByPriceLessThanEqual(ServerRequest request) {
+        return stream(request, repository.findByPriceLessThanEqual(Double.valueOf(request.pathVariable("max"))));
+    }
+
+    /**
+     * GET /api/cars/price/over/{min}
+     */
+    public Mono<ServerResponse> getCarsByPriceGreaterThan(ServerRequest request) {
+        return stream(request, repository.findByPriceGreaterThanEqual(Double.valueOf(request.pathVariable("min"))));
+    }
+
+    private Mono<ServerResponse> stream(ServerRequest request, Flux<Car> cars) {
+        boolean ndjson = request.headers().accept().stream()
+                .anyMatch(type -> type.isCompatibleWith(MediaType.APPLICATION_NDJSON) && !type.isWildcardType());
+        return ServerResponse.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(cars, Car.class);
+    }
+}
@@ -1,19 +1,39 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.BulkDeleteRequest;
+import de.ait.training.dto.CarStatsDto;
+import de.ait.training.dto.ImageUploadStatusDto;
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
 import de.ait.training.model.Car;
 import de.ait.training.repository.CarRepository;
+import de.ait.training.service.CarChangeFeed;
 import de.ait.training.service.CarService;
+import de.ait.training.service.CarSnapshotService;
+import de.ait.training.service.CarStatsService;
+import de.ait.training.service.ImageUploadService;
+import de.ait.training.service.QueryCoalescer;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static de.ait.training.logging.LogMarkers.SAMPLED;
 
 @Tag(name = "Cars", description = "Operation on cars")
 @Slf4j
@@ -23,23 +43,65 @@ public class RestApiCarController {
 
     private final CarRepository carRepository;
     private final CarService service;
+    private final CarChangeFeed changeFeed;
+    private final CarStatsService statsService;
+    private final QueryCoalescer queryCoalescer;
+    private final ImageUploadService uploadService;
+    private final CarSnapshotService snapshotService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public RestApiCarController(CarRepository carRepository, CarService carService) {
+    public RestApiCarController(CarRepository carRepository, CarService carService,
+                                CarChangeFeed changeFeed, CarStatsService statsService,
+                                QueryCoalescer queryCoalescer, ImageUploadService uploadService,
+                                CarSnapshotService snapshotService, ApplicationEventPublisher eventPublisher) {
         this.carRepository = carRepository;
         this.service = carService;
+        this.changeFeed = changeFeed;
+        this.statsService = statsService;
+        this.queryCoalescer = queryCoalescer;
+        this.uploadService = uploadService;
+        this.snapshotService = snapshotService;
+        this.eventPublisher = eventPublisher;
     }
 
 
     /**
      * GET /api/cars
+     * Пока доступен снимок каталога (CarSnapshotService), чтения по списку, цвету, цене и id
+     * идут в него, а не в базу
      *
      * @return возвращает список всех автомобилей
      */
     @GetMapping
     Iterable<Car> getCars() {
+        if (snapshotService.isServing()) {
+            return snapshotService.findAll();
+        }
         return carRepository.findAll();
     }
 
+    /**
+     * GET /api/cars/{id}
+     *
+     * @return автомобиль, 404 если не найден
+     */
+    @Operation(summary = "Get car by id",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Found car"),
+                    @ApiResponse(responseCode = "404", description = "Car not found")
+            })
+    @GetMapping("/{id}")
+    public ResponseEntity<Car> getCar(@PathVariable long id) {
+        Car car = snapshotService.isServing()
+                ? snapshotService.findById(id)
+                : carRepository.findById(id).orElse(null);
+        if (car == null) {
+            log.info(SAMPLED, "Car {} not found", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(car, HttpStatus.OK);
+    }
+
     /**
      * Создает новый автомобиль и добавляет его в лист
      *
@@ -64,6 +126,7 @@ public class RestApiCarController {
 //        }
         carRepository.save(car);
         log.info("Car posted successfully");
+        eventPublisher.publishEvent(new CarChangedEvent(CarChangeType.CREATED, car.getId(), car));
         return car;
     }
 
@@ -84,6 +147,7 @@ public class RestApiCarController {
         } else {
             log.info("Car {} was found", id);
             carRepository.save(car);
+            eventPublisher.publishEvent(new CarChangedEvent(CarChangeType.UPDATED, car.getId(), car));
         }
 
         return (foundCar == null)
@@ -99,7 +163,56 @@ public class RestApiCarController {
     @DeleteMapping("/{id}")
     void deleteCar(@PathVariable long id) {
         log.info("Delete car with id {}", id);
-        carRepository.deleteById(id);
+        service.deleteCars(List.of(id));
+    }
+
+    /**
+     * POST /api/cars/bulk-delete
+     * Удаляет много автомобилей за один запрос: по списку id или по тем же критериям,
+     * что и фильтры по цвету и цене. Картинки удаленных автомобилей удаляются в фоне
+     *
+     * @return {"deleted": количество удаленных}
+     */
+    @Operation(summary = "Delete many cars",
+            description = "Deletes cars by id list or by color and/or price range with set-based deletes",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Number of deleted cars"),
+                    @ApiResponse(responseCode = "400", description = "Neither ids nor criteria, or both")
+            })
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<Map<String, Long>> deleteCars(@RequestBody BulkDeleteRequest request) {
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byCriteria = request.getColor() != null || request.getMinPrice() != null || request.getMaxPrice() != null;
+        if (byIds == byCriteria) {
+            log.error("Bulk delete needs either ids or criteria");
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (request.getMinPrice() != null && request.getMaxPrice() != null && request.getMaxPrice() < request.getMinPrice()) {
+            log.error("Max price must be greater than min");
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        long deleted = byIds
+                ? service.deleteCars(request.getIds())
+                : service.deleteCarsByCriteria(request.getColor(), request.getMinPrice(), request.getMaxPrice());
+        return new ResponseEntity<>(Map.of("deleted", deleted), HttpStatus.OK);
+    }
+
+    /**
+     * GET /api/cars/changes
+     * Поток изменений (Server-Sent Events) вместо периодического опроса GET /api/cars.
+     * При переподключении браузер сам присылает Last-Event-ID, и клиент получает только пропущенные события.
+     *
+     * @param lastEventId id последнего полученного события
+     * @return поток событий CREATED, UPDATED, DELETED, BULK_DELETED (пачка id), IMAGE_ATTACHED
+     */
+    @Operation(summary = "Subscribe to car changes",
+            description = "Server-sent events stream with created, updated, deleted (one event per deleted batch) "
+                    + "and image-attached cars. "
+                    + "Event 'reset' means that the client must reload the full list")
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getChanges(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return changeFeed.subscribe(lastEventId);
     }
 
     /**
@@ -112,7 +225,12 @@ public class RestApiCarController {
             responses = @ApiResponse(responseCode = "200", description = "Found cars with color"))
     @GetMapping("/color/{color}")
     public ResponseEntity<List<Car>> getCarsByColor(@PathVariable String color) {
-        List<Car> filteredCars = carRepository.findByColorIgnoreCase(color);
+        // одинаковые одновременные запросы (RED, red, Red) выполняют один запрос в базу
+        String normalizedColor = color.trim().toLowerCase(Locale.ROOT);
+        List<Car> filteredCars = snapshotService.isServing()
+                ? snapshotService.findByColor(normalizedColor)
+                : queryCoalescer.execute("color:" + normalizedColor,
+                        () -> Collections.unmodifiableList(carRepository.findByColorIgnoreCase(normalizedColor)));
 
 
         if (filteredCars.isEmpty()) {
@@ -120,46 +238,87 @@ public class RestApiCarController {
             return new ResponseEntity<>(filteredCars, HttpStatus.NOT_FOUND);
         } else {
 
-            log.info("Found {} cars with color: {}", filteredCars.size(), color);
+            log.info(SAMPLED, "Found {} cars with color: {}", filteredCars.size(), color);
             return new ResponseEntity<>(filteredCars, HttpStatus.OK);
         }
 
     }
 
+    /**
+     * GET /api/cars/stats
+     *
+     * @return количество по цветам и типам двигателя, min/max/avg цена и гистограмма цен.
+     * Статистика считается в памяти, запрос в базу не делается
+     */
+    @Operation(summary = "Get catalogue statistics",
+            description = "Counts per color and engine type, min/max/avg price and price histogram",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Statistics"),
+                    @ApiResponse(responseCode = "503", description = "Statistics are still being computed")
+            })
+    @GetMapping("/stats")
+    public ResponseEntity<CarStatsDto> getStats() {
+        CarStatsDto stats = statsService.getStats();
+        if (stats == null) {
+            log.warn("Car statistics are not ready yet");
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * GET /api/cars/stats/coalescing
+     *
+     * @return сколько запросов по цвету и цене выполнено в базе и сколько присоединилось к уже идущим
+     */
+    @Operation(summary = "Get request coalescing metrics",
+            description = "Number of executed and coalesced color and price queries")
+    @GetMapping("/stats/coalescing")
+    public Map<String, Long> getCoalescingStats() {
+        return queryCoalescer.getStats();
+    }
+
     @GetMapping("/price/between/{min}/{max}") //GET 2500/500
     public ResponseEntity<List<Car>> getCarsByPriceBetween(@PathVariable Double min, @PathVariable Double max) {
         if(max < min) {
             log.error("Max price must be greater than min");
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
         }
-        List<Car> filteredCars = carRepository.findByPriceBetween(min, max);
+        List<Car> filteredCars = snapshotService.isServing()
+                ? snapshotService.findByPriceBetween(min, max)
+                : queryCoalescer.execute("price:" + min + ":" + max,
+                        () -> Collections.unmodifiableList(carRepository.findByPriceBetween(min, max)));
         if (filteredCars.isEmpty()) {
-            log.info("No cars found for price between {} and {}", min, max);
+            log.info(SAMPLED, "No cars found for price between {} and {}", min, max);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         }
-        log.info("Found {} cars with price between {} and {}", filteredCars.size(), min, max);
+        log.info(SAMPLED, "Found {} cars with price between {} and {}", filteredCars.size(), min, max);
         return new ResponseEntity<>(filteredCars, HttpStatus.OK);
     }
 
     @GetMapping("/price/under/{max}")
     public ResponseEntity<List<Car>> getCarsByPriceLessThanEqual(@PathVariable Double max) {
-        List<Car> filteredCars = carRepository.findByPriceLessThanEqual(max);
+        List<Car> filteredCars = snapshotService.isServing()
+                ? snapshotService.findByPriceLessThanEqual(max)
+                : carRepository.findByPriceLessThanEqual(max);
         if (filteredCars.isEmpty()) {
-            log.info("No cars found for price less than {}", max);
+            log.info(SAMPLED, "No cars found for price less than {}", max);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         }
-        log.info("Found {} cars with price less than {}", filteredCars.size(), max);
+        log.info(SAMPLED, "Found {} cars with price less than {}", filteredCars.size(), max);
         return new ResponseEntity<>(filteredCars, HttpStatus.OK);
     }
 
     @GetMapping("/price/over/{min}")
     public ResponseEntity<List<Car>> getCarsByPriceGreaterThan(@PathVariable Double min) {
-        List<Car> filteredCars = carRepository.findByPriceGreaterThanEqual(min);
+        List<Car> filteredCars = snapshotService.isServing()
+                ? snapshotService.findByPriceGreaterThanEqual(min)
+                : carRepository.findByPriceGreaterThanEqual(min);
         if (filteredCars.isEmpty()) {
-            log.info("No cars found for price greater than {}", min);
+            log.info(SAMPLED, "No cars found for price greater than {}", min);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
         }
-        log.info("Found {} cars with price greater than {}", filteredCars.size(), min);
+        log.info(SAMPLED, "Found {} cars with price greater than {}", filteredCars.size(), min);
         return new ResponseEntity<>(filteredCars, HttpStatus.OK);
     }
 
@@ -167,4 +326,70 @@ public class RestApiCarController {
     public void attachImage(@PathVariable Long id, @RequestParam MultipartFile file) {
       service.attachImage(id, file);
     }
+
+    /**
+     * POST /api/cars/{id}/uploads?fileName=bmw.jpg&size=52428800
+     * Начинает загрузку картинки по частям, для больших файлов и нестабильного соединения
+     *
+     * @return id загрузки, дальше части отправляются через PUT /api/cars/{id}/uploads/{uploadId}
+     */
+    @Operation(summary = "Start resumable image upload",
+            description = "Creates an upload session, chunks are sent with PUT /api/cars/{id}/uploads/{uploadId}")
+    @PostMapping("/{id}/uploads")
+    public ResponseEntity<ImageUploadStatusDto> startImageUpload(@PathVariable Long id,
+                                                                 @RequestParam String fileName,
+                                                                 @RequestParam long size) {
+        if (!carRepository.existsById(id)) {
+            log.warn("Car {} not found, upload is not started", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        try {
+            return new ResponseEntity<>(uploadService.createSession(id, fileName, size), HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            log.error("Upload for car {} is not started: {}", id, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * PUT /api/cars/{id}/uploads/{uploadId}?offset=1048576
+     * Тело запроса - байты части файла (application/octet-stream). Части можно слать параллельно
+     * и повторять: после обрыва связи досылаются только missingRanges
+     *
+     * @return состояние загрузки, completed = true и imageUrl, когда файл получен целиком
+     */
+    @Operation(summary = "Upload image chunk",
+            description = "Writes the request body at the given offset; the image is attached when all bytes are received")
+    @PutMapping(path = "/{id}/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ImageUploadStatusDto> uploadImageChunk(@PathVariable Long id,
+                                                                 @PathVariable String uploadId,
+                                                                 @RequestParam long offset,
+                                                                 InputStream body) throws IOException {
+        try {
+            ImageUploadStatusDto status = uploadService.writeChunk(id, uploadId, offset, body);
+            if (status == null) {
+                log.warn("Upload {} for car {} not found", uploadId, id);
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(status, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.error("Chunk of upload {} rejected: {}", uploadId, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * GET /api/cars/{id}/uploads/{uploadId}
+     *
+     * @return какие части уже получены - нужно клиенту для докачки после переподключения
+     */
+    @GetMapping("/{id}/uploads/{uploadId}")
+    public ResponseEntity<ImageUploadStatusDto> getImageUpload(@PathVariable Long id, @PathVariable String uploadId) {
+        ImageUploadStatusDto status = uploadService.getStatus(id, uploadId);
+        if (status == null) {
+            log.warn("Upload {} for car {} not found", uploadId, id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(status, HttpStatus.OK);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package de.ait.training.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Запрос POST /api/cars/bulk-delete: либо список id, либо критерии
+ * (цвет без учета регистра и/или цена от minPrice до maxPrice включительно)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkDeleteRequest {
+
+    private List<Long> ids;
+    private String color;
+    private Double minPrice;
+    private Double maxPrice;
+}
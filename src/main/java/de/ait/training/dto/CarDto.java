@@ -0,0 +1,28 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Неизменяемый снимок автомобиля на момент события.
+ * Лента изменений хранит события в истории и сериализует их позже в другом потоке,
+ * поэтому в событие кладется копия, а не управляемая JPA сущность Car
+ */
+@Getter
+@AllArgsConstructor
+public class CarDto {
+
+    private final Long id;
+    private final String color;
+    private final String model;
+    private final double price;
+    private final String engineType;
+    private final int year;
+    private final String imageUrl;
+
+    public static CarDto from(Car car) {
+        return car == null ? null : new CarDto(car.getId(), car.getColor(), car.getModel(), car.getPrice(),
+                car.getEngineType(), car.getYear(), car.getImageUrl());
+    }
+}
@@ -0,0 +1,24 @@
+package de.ait.training.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Ответ GET /api/cars/stats.
+ * priceHistogram: нижняя граница корзины цены -> количество автомобилей
+ */
+@Getter
+@AllArgsConstructor
+public class CarStatsDto {
+
+    private final long total;
+    private final Map<String, Long> countByColor;
+    private final Map<String, Long> countByEngineType;
+    private final Double minPrice;
+    private final Double maxPrice;
+    private final Double avgPrice;
+    private final double priceBucketWidth;
+    private final Map<Double, Long> priceHistogram;
+}
@@ -0,0 +1,33 @@
+package de.ait.training.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запрос POST /api/email/campaigns.
+ * variables - общие для всех писем, recipients[].variables - свои для каждого получателя
+ * (подставляются только как текст, например th:text="${username}")
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailCampaignRequest {
+
+    private String subject;
+    private String template;
+    private Map<String, Object> variables = new HashMap<>();
+    private List<Recipient> recipients;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Recipient {
+        private String email;
+        private Map<String, String> variables = new HashMap<>();
+    }
+}
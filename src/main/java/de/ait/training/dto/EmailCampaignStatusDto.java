@@ -0,0 +1,25 @@
+package de.ait.training.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Ответ GET /api/email/campaigns/{id}.
+ * failures: адрес -> причина ошибки
+ */
+@Getter
+@AllArgsConstructor
+public class EmailCampaignStatusDto {
+
+    private final String id;
+    private final String status;
+    private final int total;
+    private final int sent;
+    private final int failed;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    private final Map<String, String> failures;
+}
@@ -0,0 +1,24 @@
+package de.ait.training.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Состояние загрузки картинки по частям.
+ * missingRanges: еще не полученные диапазоны [from, to) - их клиент и должен дослать после обрыва
+ */
+@Getter
+@AllArgsConstructor
+public class ImageUploadStatusDto {
+
+    private final String uploadId;
+    private final Long carId;
+    private final String fileName;
+    private final long size;
+    private final long received;
+    private final List<long[]> missingRanges;
+    private final boolean completed;
+    private final String imageUrl;
+}
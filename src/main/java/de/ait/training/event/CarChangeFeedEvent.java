@@ -0,0 +1,27 @@
+package de.ait.training.event;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import de.ait.training.dto.CarDto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Событие, которое отправляется подписчикам GET /api/cars/changes.
+ * id - монотонный номер события, клиент присылает его обратно в заголовке Last-Event-ID.
+ * Для BULK_DELETED carId и car пустые, а удаленные автомобили перечислены в carIds
+ */
+@Getter
+@AllArgsConstructor
+public class CarChangeFeedEvent {
+
+    private final long id;
+    private final CarChangeType type;
+    private final Long carId;
+    private final CarDto car;
+    private final Instant timestamp;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final List<Long> carIds;
+}
@@ -0,0 +1,10 @@
+package de.ait.training.event;
+
+public enum CarChangeType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    // массовое удаление, id удаленных автомобилей в carIds
+    BULK_DELETED,
+    IMAGE_ATTACHED
+}
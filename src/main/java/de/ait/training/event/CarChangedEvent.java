@@ -0,0 +1,21 @@
+package de.ait.training.event;
+
+import de.ait.training.model.Car;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Событие изменения автомобиля внутри приложения.
+ * Публикуется через ApplicationEventPublisher после каждой операции записи,
+ * car == null для DELETED
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class CarChangedEvent {
+
+    private final CarChangeType type;
+    private final Long carId;
+    private final Car car;
+}
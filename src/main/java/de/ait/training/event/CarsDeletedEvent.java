@@ -0,0 +1,19 @@
+package de.ait.training.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Массовое удаление: одно событие на порцию (до cars.delete.chunk-size автомобилей)
+ * вместо CarChangedEvent(DELETED) на каждый автомобиль
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class CarsDeletedEvent {
+
+    private final List<Long> carIds;
+}
@@ -0,0 +1,19 @@
+package de.ait.training.logging;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Маркеры логов, по которым их отбирают фильтры в logback-spring.xml
+ */
+public final class LogMarkers {
+
+    /**
+     * Частые INFO-строки чтения (GET), которые можно сэмплировать (см. SamplingTurboFilter).
+     * Строки изменений (POST, PUT, DELETE) этим маркером не помечаются и пишутся всегда
+     */
+    public static final Marker SAMPLED = MarkerFactory.getMarker("SAMPLED");
+
+    private LogMarkers() {
+    }
+}
@@ -0,0 +1,67 @@
+package de.ait.training.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Пропускает только каждое rate-е (в среднем) сообщение заданного логгера уровня maxLevel и ниже.
+ * WARN и ERROR не трогаются. Если задан marker, сэмплируются только сообщения с этим маркером
+ * (LogMarkers.SAMPLED), остальные сообщения логгера пишутся всегда.
+ * TurboFilter срабатывает до форматирования сообщения, поэтому отброшенная запись почти ничего не стоит.
+ * <p>
+ * Пример в logback-spring.xml:
+ * <pre>
+ * &lt;turboFilter class="de.ait.training.logging.SamplingTurboFilter"&gt;
+ *     &lt;loggerName&gt;de.ait.training.controller&lt;/loggerName&gt;
+ *     &lt;maxLevel&gt;INFO&lt;/maxLevel&gt;
+ *     &lt;marker&gt;SAMPLED&lt;/marker&gt;
+ *     &lt;rate&gt;100&lt;/rate&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private String loggerName;
+    private Level maxLevel = Level.INFO;
+    private int rate = 1;
+    private String markerName;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format == null - это проверка isInfoEnabled(), ее не считаем
+        if (!isStarted() || rate <= 1 || format == null || level == null) {
+            return FilterReply.NEUTRAL;
+        }
+        if (level.isGreaterOrEqual(Level.WARN) || level.toInt() > maxLevel.toInt()) {
+            return FilterReply.NEUTRAL;
+        }
+        if (loggerName != null && !logger.getName().startsWith(loggerName)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (markerName != null && (marker == null || !marker.contains(markerName))) {
+            return FilterReply.NEUTRAL;
+        }
+        return ThreadLocalRandom.current().nextInt(rate) == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setLoggerName(String loggerName) {
+        this.loggerName = loggerName;
+    }
+
+    public void setMaxLevel(String maxLevel) {
+        this.maxLevel = Level.toLevel(maxLevel, Level.INFO);
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public void setMarker(String markerName) {
+        this.markerName = markerName;
+    }
+}
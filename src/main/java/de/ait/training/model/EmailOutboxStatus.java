@@ -0,0 +1,8 @@
+package de.ait.training.model;
+
+public enum EmailOutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
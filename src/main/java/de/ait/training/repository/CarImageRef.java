@@ -0,0 +1,11 @@
+package de.ait.training.repository;
+
+/**
+ * Проекция для удаления: только id и ссылка на картинку, без загрузки всей сущности
+ */
+public interface CarImageRef {
+
+    Long getId();
+
+    String getImageUrl();
+}
@@ -1,8 +1,11 @@
 package de.ait.training.repository;
 
 import de.ait.training.model.Car;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CarRepository  extends JpaRepository<Car, Long> {
@@ -10,4 +13,46 @@ public interface CarRepository  extends JpaRepository<Car, Long> {
     List<Car> findByPriceBetween(Double min, Double max);
     List<Car> findByPriceLessThanEqual(Double max);
     List<Car> findByPriceGreaterThanEqual(Double min);
-}
\ No newline at end of file
+    List<Car> findByIdBetween(Long from, Long to);
+
+    @Query("select min(c.id) from Car c")
+    Long findMinId();
+
+    @Query("select max(c.id) from Car c")
+    Long findMaxId();
+
+    /**
+     * Какие из ссылок на картинки еще указаны у автомобилей (индекс idx_cars_image_url)
+     */
+    @Query("select distinct c.imageUrl from Car c where c.imageUrl in :imageUrls")
+    List<String> findReferencedImageUrls(Collection<String> imageUrls);
+
+    /**
+     * Следующая порция id для удаления по критериям (те же, что у фильтров по цвету и цене).
+     * Параметр == null - критерий не используется, color передается уже в верхнем регистре
+     */
+    @Query("""
+            select c.id from Car c
+            where (:color is null or upper(c.color) = :color)
+              and (:minPrice is null or c.price >= :minPrice)
+              and (:maxPrice is null or c.price <= :maxPrice)
+              and c.id > :afterId
+            order by c.id
+            """)
+    List<Long> findIdsByCriteria(String color, Double minPrice, Double maxPrice, Long afterId, Pageable pageable);
+
+    /**
+     * Удаляет автомобили одним DELETE и возвращает id и картинки удаленных.
+     * Критерии проверяются еще раз в самом DELETE: строка, которую изменили после выбора id
+     * и которая больше не подходит, не удаляется. Для удаления по id критерии - null
+     */
+    @Query(value = """
+            DELETE FROM cars
+            WHERE id IN (:ids)
+              AND (CAST(:color AS text) IS NULL OR upper(color) = :color)
+              AND (CAST(:minPrice AS double precision) IS NULL OR price >= :minPrice)
+              AND (CAST(:maxPrice AS double precision) IS NULL OR price <= :maxPrice)
+            RETURNING id AS "id", image_url AS "imageUrl"
+            """, nativeQuery = true)
+    List<CarImageRef> deleteReturningImageRefs(Collection<Long> ids, String color, Double minPrice, Double maxPrice);
+}
@@ -0,0 +1,35 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.EmailOutboxMessage;
+import de.ait.training.model.EmailOutboxStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    /**
+     * Письма, готовые к отправке, и письма, чья аренда истекла (экземпляр упал во время отправки).
+     * SKIP LOCKED пропускает строки, которые прямо сейчас забирает другой экземпляр приложения
+     */
+    @Query(value = """
+            SELECT * FROM email_outbox
+            WHERE (status = 'PENDING' AND next_attempt_at <= now())
+               OR (status = 'SENDING' AND locked_until < now())
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<EmailOutboxMessage> lockBatchForSending(int limit);
+
+    /**
+     * Письмо, если его аренда все еще принадлежит тому, кто забирал его с этим номером попытки:
+     * повторная выдача после окончания аренды увеличивает attempts. Строка блокируется до конца транзакции
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<EmailOutboxMessage> findByIdAndStatusAndAttempts(Long id, EmailOutboxStatus status, int attempts);
+}
@@ -0,0 +1,75 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Car;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+
+/**
+ * Неблокирующее чтение таблицы cars через R2DBC, те же запросы, что у CarRepository.
+ * <p>
+ * Строки читаются из курсора порциями по cars.reactive.fetch-size и только по запросу подписчика:
+ * если клиент медленно читает ответ, следующая порция из базы не запрашивается.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveCarRepository {
+
+    private static final String SELECT = "SELECT id, color, model, price, engine_type, year, image_url FROM cars ";
+
+    private final DatabaseClient databaseClient;
+    private final int fetchSize;
+
+    public ReactiveCarRepository(DatabaseClient databaseClient,
+                                 @Value("${cars.reactive.fetch-size:256}") int fetchSize) {
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    public Flux<Car> findAll() {
+        return query(databaseClient.sql(SELECT + "ORDER BY id"));
+    }
+
+    /**
+     * Как CarRepository.findByColorIgnoreCase: upper(color) = upper(?), по индексу idx_cars_upper_color
+     */
+    public Flux<Car> findByColorIgnoreCase(String color) {
+        return query(databaseClient.sql(SELECT + "WHERE upper(color) = upper(:color)").bind("color", color));
+    }
+
+    public Flux<Car> findByPriceBetween(Double min, Double max) {
+        return query(databaseClient.sql(SELECT + "WHERE price BETWEEN :min AND :max")
+                .bind("min", BigDecimal.valueOf(min))
+                .bind("max", BigDecimal.valueOf(max)));
+    }
+
+    public Flux<Car> findByPriceLessThanEqual(Double max) {
+        return query(databaseClient.sql(SELECT + "WHERE price <= :max").bind("max", BigDecimal.valueOf(max)));
+    }
+
+    public Flux<Car> findByPriceGreaterThanEqual(Double min) {
+        return query(databaseClient.sql(SELECT + "WHERE price >= :min").bind("min", BigDecimal.valueOf(min)));
+    }
+
+    private Flux<Car> query(DatabaseClient.GenericExecuteSpec spec) {
+        return spec.filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+                .map(ReactiveCarRepository::toCar)
+                .all();
+    }
+
+    private static Car toCar(Readable row) {
+        Car car = new Car(row.get("color", String.class), row.get("model", String.class),
+                row.get("price", BigDecimal.class).doubleValue());
+        car.setId(row.get("id", Long.class));
+        car.setEngineType(row.get("engine_type", String.class));
+        Integer year = row.get("year", Integer.class);
+        car.setYear(year == null ? 0 : year);
+        car.setImageUrl(row.get("image_url", String.class));
+        return car;
+    }
+}
@@ -0,0 +1,230 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarChangeFeedEvent;
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsDeletedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента изменений автомобилей для GET /api/cars/changes (Server-Sent Events).
+ * <p>
+ * Публикация никогда не блокируется: событие кладется в ограниченную очередь каждого подписчика,
+ * а отправка по сети идет в отдельном виртуальном потоке. Подписчик, который не успевает
+ * читать и переполнил свою очередь, отключается - при переподключении с заголовком
+ * Last-Event-ID он дочитает пропущенное из истории последних событий.
+ * Если нужного события в истории уже нет, клиент получает событие "reset" и должен
+ * заново загрузить весь список.
+ */
+@Slf4j
+@Service
+public class CarChangeFeed {
+
+    static final String RESET_EVENT = "reset";
+
+    private final int bufferSize;
+    private final int historySize;
+    private final long timeoutMs;
+
+    // Номера событий начинаются с текущего времени, чтобы Last-Event-ID от прошлого запуска
+    // приложения не совпал со свежими событиями, а ушел в "reset"
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final ArrayDeque<CarChangeFeedEvent> history = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender;
+
+    @Autowired
+    public CarChangeFeed(
+            @Value("${cars.changes.buffer-size:256}") int bufferSize,
+            @Value("${cars.changes.history-size:4096}") int historySize,
+            @Value("${cars.changes.timeout-ms:0}") long timeoutMs
+    ) {
+        this(bufferSize, historySize, timeoutMs, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @param sender потоки отправки событий подписчикам
+     */
+    CarChangeFeed(int bufferSize, int historySize, long timeoutMs, ExecutorService sender) {
+        this.bufferSize = bufferSize;
+        this.historySize = historySize;
+        this.timeoutMs = timeoutMs;
+        this.sender = sender;
+    }
+
+    /**
+     * Регистрирует нового подписчика
+     *
+     * @param lastEventId последнее событие, полученное клиентом до обрыва соединения, или null
+     * @return emitter, который контроллер возвращает клиенту
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, new ArrayBlockingQueue<>(bufferSize));
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        synchronized (history) {
+            if (lastEventId != null) {
+                List<CarChangeFeedEvent> missed = eventsAfter(lastEventId);
+                if (missed == null || missed.size() > bufferSize) {
+                    subscriber.resetPending = true;
+                } else {
+                    subscriber.queue.addAll(missed);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        log.info("Change feed subscriber connected, lastEventId = {}, subscribers = {}",
+                lastEventId, subscribers.size());
+
+        schedule(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Для операций внутри транзакции событие приходит только после коммита,
+     * для всего остального (например, save() из контроллера) - сразу
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarChanged(CarChangedEvent event) {
+        publish(event.getType(), event.getCarId(), CarDto.from(event.getCar()), null);
+    }
+
+    /**
+     * Массовое удаление идет одним событием BULK_DELETED на порцию, а не событием на каждый
+     * автомобиль, иначе удаление тысяч строк переполнило бы очереди всех подписчиков
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarsDeleted(CarsDeletedEvent event) {
+        publish(CarChangeType.BULK_DELETED, null, null, event.getCarIds());
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        sender.shutdownNow();
+    }
+
+    private void publish(CarChangeType type, Long carId, CarDto car, List<Long> carIds) {
+        List<Subscriber> overflowed = new ArrayList<>();
+        List<Subscriber> ready = new ArrayList<>();
+
+        synchronized (history) {
+            CarChangeFeedEvent feedEvent = new CarChangeFeedEvent(sequence.incrementAndGet(),
+                    type, carId, car, Instant.now(), carIds);
+            history.addLast(feedEvent);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.queue.offer(feedEvent)) {
+                    ready.add(subscriber);
+                } else {
+                    overflowed.add(subscriber);
+                }
+            }
+        }
+
+        for (Subscriber subscriber : overflowed) {
+            log.warn("Change feed subscriber is too slow, disconnecting");
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+        }
+        ready.forEach(this::schedule);
+    }
+
+    /**
+     * @return события после lastEventId или null, если часть из них уже вытеснена из истории
+     */
+    private List<CarChangeFeedEvent> eventsAfter(long lastEventId) {
+        long current = sequence.get();
+        if (lastEventId > current) {
+            return null;
+        }
+        if (lastEventId == current) {
+            return List.of();
+        }
+        CarChangeFeedEvent oldest = history.peekFirst();
+        if (oldest == null || oldest.getId() > lastEventId + 1) {
+            return null;
+        }
+        List<CarChangeFeedEvent> result = new ArrayList<>();
+        for (CarChangeFeedEvent event : history) {
+            if (event.getId() > lastEventId) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            sender.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            do {
+                if (subscriber.resetPending) {
+                    subscriber.resetPending = false;
+                    subscriber.emitter.send(SseEmitter.event().name(RESET_EVENT).data(sequence.get()));
+                }
+                CarChangeFeedEvent event;
+                while ((event = subscriber.queue.poll()) != null) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.getId()))
+                            .name(event.getType().name())
+                            .data(event));
+                }
+                subscriber.draining.set(false);
+                // событие могло прийти между последним poll() и сбросом флага
+            } while (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Change feed subscriber disconnected: {}", e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<CarChangeFeedEvent> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean resetPending;
+
+        private Subscriber(SseEmitter emitter, BlockingQueue<CarChangeFeedEvent> queue) {
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.ait.training.service;
+
+import de.ait.training.repository.CarRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static de.ait.training.service.CarService.IMAGES_PATH;
+
+/**
+ * Удаляет из upload.dir картинки удаленных автомобилей.
+ * Работает в отдельном потоке, чтобы удаление тысяч файлов не задерживало HTTP-ответ.
+ */
+@Slf4j
+@Service
+public class CarImageCleaner {
+
+    private final CarRepository repository;
+    private final CarImageStore imageStore;
+    private final Path uploadDir;
+    private final String hostUrl;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public CarImageCleaner(
+            CarRepository repository,
+            CarImageStore imageStore,
+            @Value("${upload.dir}") String uploadDirName,
+            @Value("${host.url}") String hostUrl
+    ) {
+        this.repository = repository;
+        this.imageStore = imageStore;
+        this.uploadDir = Path.of(uploadDirName).toAbsolutePath().normalize();
+        this.hostUrl = hostUrl;
+    }
+
+    public void deleteImagesAsync(Collection<String> imageUrls) {
+        if (imageUrls.isEmpty()) {
+            return;
+        }
+        List<String> urls = List.copyOf(imageUrls);
+        executor.execute(() -> deleteImages(urls));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void deleteImages(List<String> imageUrls) {
+        // чужие ссылки не трогаем
+        Set<String> fileNames = imageUrls.stream()
+                .map(this::toFileName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        try {
+            // PUT и POST принимают imageUrl от клиента, поэтому файл может быть указан еще у какого-то
+            // автомобиля, и в старом виде ссылки (host.url + имя), и в текущем (host.url + images/ + имя):
+            // один запрос на всю порцию по индексу idx_cars_image_url
+            Set<String> candidates = new HashSet<>();
+            for (String fileName : fileNames) {
+                candidates.add(hostUrl + fileName);
+                candidates.add(hostUrl + IMAGES_PATH + fileName);
+            }
+            repository.findReferencedImageUrls(candidates).stream()
+                    .map(this::toFileName)
+                    .forEach(fileNames::remove);
+        } catch (RuntimeException e) {
+            log.warn("Can not check image references, images are kept", e);
+            return;
+        }
+        fileNames.forEach(this::deleteImage);
+    }
+
+    /**
+     * Имя файла из ссылки на свою картинку в любом из двух видов, null для чужой ссылки
+     */
+    private String toFileName(String imageUrl) {
+        if (!imageUrl.startsWith(hostUrl)) {
+            return null;
+        }
+        String path = imageUrl.substring(hostUrl.length());
+        String fileName = path.startsWith(IMAGES_PATH) ? path.substring(IMAGES_PATH.length()) : path;
+        return fileName.isEmpty() || fileName.contains("/") ? null : fileName;
+    }
+
+    private void deleteImage(String fileName) {
+        Path file = uploadDir.resolve(fileName).normalize();
+        if (!uploadDir.equals(file.getParent())) {
+            return;
+        }
+        try {
+            imageStore.evict(fileName);
+            if (Files.deleteIfExists(file)) {
+                log.debug("Orphaned image {} deleted", fileName);
+            }
+        } catch (IOException e) {
+            log.warn("Can not delete orphaned image {}", fileName, e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package de.ait.training.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Доступ к файлам картинок из upload.dir для CarImageController.
+ * <p>
+ * Имена файлов уникальны (UUID), а сами файлы после загрузки не меняются, поэтому
+ * самые популярные небольшие картинки можно держать в памяти (Caffeine, ограничение по байтам).
+ * Чтение из кэша не берет общую блокировку, поэтому попадания в кэш не выстраиваются в очередь.
+ * Большие файлы в кэш не попадают и отдаются с диска без копирования (sendfile).
+ */
+@Slf4j
+@Service
+public class CarImageStore {
+
+    private final Path uploadDir;
+    private final long maxCachedFileSize;
+    private final Cache<String, ImageFile> cache;
+
+    public CarImageStore(
+            @Value("${upload.dir}") String uploadDirName,
+            @Value("${image.cache.max-file-size:1048576}") long maxCachedFileSize,
+            @Value("${image.cache.max-size:67108864}") long maxCacheSize
+    ) {
+        this.uploadDir = Path.of(uploadDirName).toAbsolutePath().normalize();
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCacheSize)
+                .weigher((String fileName, ImageFile file) -> (int) Math.min(file.size(), Integer.MAX_VALUE))
+                // вытеснение сразу в вызывающем потоке, без задач в общем ForkJoinPool
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * @return файл картинки или null, если такого нет
+     */
+    public ImageFile find(String fileName) throws IOException {
+        ImageFile cachedFile = cache.getIfPresent(fileName);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+
+        Path path = uploadDir.resolve(fileName).normalize();
+        if (!uploadDir.equals(path.getParent()) || !Files.isRegularFile(path)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        // сильный ETag: файл с таким именем никогда не перезаписывается
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+        if (size > maxCachedFileSize) {
+            return new ImageFile(path, size, lastModified, etag, null);
+        }
+        ImageFile file = new ImageFile(path, size, lastModified, etag, Files.readAllBytes(path));
+        cache.put(fileName, file);
+        return file;
+    }
+
+    /**
+     * Убирает файл из кэша, нужно вызывать при удалении картинки с диска
+     */
+    public void evict(String fileName) {
+        cache.invalidate(fileName);
+    }
+
+    public int getCachedFileCount() {
+        return (int) cache.estimatedSize();
+    }
+
+    /**
+     * content != null, если файл лежит в памяти
+     */
+    public record ImageFile(Path path, long size, long lastModified, String etag, byte[] content) {
+    }
+}
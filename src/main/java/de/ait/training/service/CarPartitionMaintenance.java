@@ -0,0 +1,90 @@
+package de.ait.training.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Создает новые секции таблицы cars заранее, пока id до них еще не дошли.
+ * <p>
+ * Сама логика - в функции cars_ensure_partitions (db.changelog-7.0-partition-cars.xml),
+ * здесь она только вызывается при старте и затем раз в cars.partitioning.check-interval-minutes.
+ * Экземпляры приложения вызывают ее одновременно, функция сама берет pg_advisory_xact_lock,
+ * поэтому одну секцию создает только один из них.
+ * Если функции нет (не PostgreSQL, миграция не применялась), обслуживание выключается.
+ */
+@Slf4j
+@Service
+public class CarPartitionMaintenance {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int partitionsAhead;
+    private final long checkIntervalMinutes;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public CarPartitionMaintenance(
+            JdbcTemplate jdbcTemplate,
+            @Value("${cars.partitioning.enabled:true}") boolean enabled,
+            @Value("${cars.partitioning.partitions-ahead:1}") int partitionsAhead,
+            @Value("${cars.partitioning.check-interval-minutes:60}") long checkIntervalMinutes
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.partitionsAhead = partitionsAhead;
+        this.checkIntervalMinutes = checkIntervalMinutes;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!isPartitioned()) {
+            log.info("Table cars is not partitioned, partition maintenance is off");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::ensurePartitions, 0, checkIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return количество созданных секций
+     */
+    public int ensurePartitions() {
+        try {
+            Integer created = jdbcTemplate.queryForObject("SELECT cars_ensure_partitions(?)", Integer.class, partitionsAhead);
+            if (created != null && created > 0) {
+                log.info("Created {} new partition(s) of table cars", created);
+            }
+            return created == null ? 0 : created;
+        } catch (DataAccessException e) {
+            log.error("Can not create partitions of table cars", e);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private boolean isPartitioned() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_proc WHERE proname = 'cars_ensure_partitions'", Integer.class);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+}
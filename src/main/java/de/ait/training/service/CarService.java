@@ -2,7 +2,35 @@ package de.ait.training.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+import java.util.Collection;
+
 public interface CarService {
 
+    /**
+     * Путь, по которому CarImageController отдает загруженные картинки (относительно host.url)
+     */
+    String IMAGES_PATH = "images/";
+
     void attachImage(Long id, MultipartFile file);
+
+    /**
+     * Переносит уже полностью записанный файл в upload.dir и привязывает его к автомобилю
+     *
+     * @return новый imageUrl автомобиля
+     */
+    String attachImageFile(Long id, Path file, String originalFileName);
+
+    /**
+     * Удаляет автомобили по списку id порциями, каждая порция - один DELETE в своей транзакции.
+     * Картинки удаленных автомобилей удаляются с диска в фоне
+     *
+     * @return сколько автомобилей удалено
+     */
+    long deleteCars(Collection<Long> ids);
+
+    /**
+     * То же, что deleteCars, но по критериям; null - критерий не используется
+     */
+    long deleteCarsByCriteria(String color, Double minPrice, Double maxPrice);
 }
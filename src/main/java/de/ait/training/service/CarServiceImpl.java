@@ -1,45 +1,78 @@
 package de.ait.training.service;
 
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsDeletedEvent;
 import de.ait.training.model.Car;
+import de.ait.training.repository.CarImageRef;
 import de.ait.training.repository.CarRepository;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 public class CarServiceImpl implements CarService {
 
     private final CarRepository repository;
     private final String uploadDirName;
     private final String hostUrl;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final CarImageCleaner imageCleaner;
+    private final int deleteChunkSize;
 
     public CarServiceImpl(
             CarRepository repository,
             @Value("${upload.dir}") String uploadDirName,
-            @Value("${host.url}") String hostUrl
+            @Value("${host.url}") String hostUrl,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            CarImageCleaner imageCleaner,
+            @Value("${cars.delete.chunk-size:1000}") int deleteChunkSize
     ) {
         this.repository = repository;
         this.uploadDirName = uploadDirName;
         this.hostUrl = hostUrl;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.imageCleaner = imageCleaner;
+        this.deleteChunkSize = deleteChunkSize;
     }
 
     @Override
     @Transactional
     public void attachImage(Long id, MultipartFile file) {
-        System.out.println(">>> attachImage called, id = " + id
-                + ", file = " + (file != null ? file.getOriginalFilename() : "null"));
+        log.debug("attachImage called, id = {}, file = {}", id, file != null ? file.getOriginalFilename() : null);
 
         File uploadDir = new File(uploadDirName);
         uploadDir.mkdirs();
 
-        String uniqueFileName = generateUniqueFileName(file);
+        String uniqueFileName = generateUniqueFileName(file.getOriginalFilename());
         File targetFile = new File(uploadDir, uniqueFileName);
 
         try (FileOutputStream out = new FileOutputStream(targetFile)) {
@@ -50,17 +83,113 @@ public class CarServiceImpl implements CarService {
 
 
         // Чтобы получить загруженную картинку обратно, клиент отправляет запрос:
-        // GET  ->  http://localhost:8080/b34c0d8d-bfc5-4e65-9498-9cf31b15feb4-bmw.jpg
+        // GET  ->  http://localhost:8080/images/b34c0d8d-bfc5-4e65-9498-9cf31b15feb4-bmw.jpg
+        // (старые ссылки без images/ по-прежнему отдает обработчик статики)
         Car car = repository.findById(id).orElseThrow(
                 // По-хорошему здесь нужно выбрасывать пользовательский эксепшен
                 // и обрабатывать его в глобальном обработчике эксепшенов
                 () -> new IllegalArgumentException("Car with id " + id + " not found")
         );
-        car.setImageUrl(hostUrl + uniqueFileName);
+        car.setImageUrl(hostUrl + IMAGES_PATH + uniqueFileName);
+        // подписчики ленты изменений получат событие только после коммита транзакции
+        eventPublisher.publishEvent(new CarChangedEvent(CarChangeType.IMAGE_ATTACHED, id, car));
     }
 
-    private String generateUniqueFileName(MultipartFile file) {
-        String origFileName = file.getOriginalFilename();
+    @Override
+    @Transactional
+    public String attachImageFile(Long id, Path file, String originalFileName) {
+        Car car = repository.findById(id).orElseThrow(
+                () -> new IllegalArgumentException("Car with id " + id + " not found")
+        );
+
+        Path uploadDir = Path.of(uploadDirName);
+        String uniqueFileName = generateUniqueFileName(originalFileName);
+        try {
+            Files.createDirectories(uploadDir);
+            // временный файл лежит на том же диске, поэтому перенос атомарный:
+            // по ссылке никогда не будет видно недописанной картинки
+            Files.move(file, uploadDir.resolve(uniqueFileName), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        deleteOnRollback(uploadDir.resolve(uniqueFileName));
+
+        car.setImageUrl(hostUrl + IMAGES_PATH + uniqueFileName);
+        eventPublisher.publishEvent(new CarChangedEvent(CarChangeType.IMAGE_ATTACHED, id, car));
+        return car.getImageUrl();
+    }
+
+    /**
+     * Файл уже перенесен в upload.dir: если транзакция откатится (исключение дальше в методе
+     * или ошибка коммита), ссылки на него не будет, и он удаляется
+     */
+    private void deleteOnRollback(Path file) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Can not delete image {} of a rolled back upload", file, e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public long deleteCars(Collection<Long> ids) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        long deleted = 0;
+        for (int from = 0; from < distinctIds.size(); from += deleteChunkSize) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + deleteChunkSize, distinctIds.size()));
+            deleted += deleteChunk(() -> repository.deleteReturningImageRefs(chunk, null, null, null)).size();
+        }
+        log.info("Deleted {} cars by id", deleted);
+        return deleted;
+    }
+
+    @Override
+    public long deleteCarsByCriteria(String color, Double minPrice, Double maxPrice) {
+        // как findByColorIgnoreCase: upper(color) = upper(?)
+        String normalizedColor = color == null ? null : color.trim().toUpperCase(Locale.ROOT);
+        long deleted = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> ids = repository.findIdsByCriteria(normalizedColor, minPrice, maxPrice, afterId,
+                    PageRequest.of(0, deleteChunkSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            // строки, измененные между выбором id и удалением, DELETE проверит по критериям еще раз
+            deleted += deleteChunk(() -> repository.deleteReturningImageRefs(ids, normalizedColor, minPrice, maxPrice))
+                    .size();
+            afterId = ids.get(ids.size() - 1);
+        }
+        log.info("Deleted {} cars by color {} and price from {} to {}", deleted, color, minPrice, maxPrice);
+        return deleted;
+    }
+
+    /**
+     * Одна порция удаления в своей транзакции: строки заблокированы только на время одного
+     * DELETE ... WHERE id IN (...) RETURNING, а не всей операции
+     */
+    private List<CarImageRef> deleteChunk(Supplier<List<CarImageRef>> delete) {
+        List<CarImageRef> chunk = transactionTemplate.execute(status -> {
+            List<CarImageRef> deleted = delete.get();
+            if (!deleted.isEmpty()) {
+                // одно событие на порцию: лента изменений, статистика и снимок получат его после коммита
+                eventPublisher.publishEvent(new CarsDeletedEvent(deleted.stream().map(CarImageRef::getId).toList()));
+            }
+            return deleted;
+        });
+        imageCleaner.deleteImagesAsync(chunk.stream().map(CarImageRef::getImageUrl).filter(Objects::nonNull).toList());
+        return chunk;
+    }
+
+    private String generateUniqueFileName(String origFileName) {
         String randomUuid = UUID.randomUUID().toString();
         return randomUuid + "-" + origFileName;
     }
@@ -0,0 +1,344 @@
+package de.ait.training.service;
+
+import de.ait.training.model.Car;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Бинарный снимок таблицы cars, который читается через отображение файла в память (mmap).
+ * <p>
+ * Формат файла:
+ * <pre>
+ * заголовок (64 байта): MAGIC, VERSION, createdAt, число записей, смещение строк, смещение и размер словаря
+ * записи по RECORD_SIZE байт, отсортированы по id:
+ *     id long, price double, year int, color int, model int, engineType int, imageUrl long
+ * строки: imageUrl как длина int + UTF-8, смещение записывается в запись (-1 = null)
+ * словарь: значения color, model и engineType как длина int + UTF-8, в записи хранится номер (-1 = null)
+ * </pre>
+ * Один MappedByteBuffer не может быть больше 2 ГБ, поэтому записи и строки отображаются частями
+ * по CHUNK_SIZE байт: части записей кратны RECORD_SIZE, а Writer следит, чтобы строка
+ * не пересекала границу части.
+ */
+final class CarSnapshot {
+
+    static final int MAGIC = 0x43415253; // "CARS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final int RECORDS_PER_CHUNK = (int) (CHUNK_SIZE / RECORD_SIZE);
+
+    private final Path file;
+    private final long createdAt;
+    private final int size;
+    private final String[] dictionary;
+    private final MappedByteBuffer[] records;
+    private final MappedByteBuffer[] strings;
+
+    private CarSnapshot(Path file, long createdAt, int size, String[] dictionary,
+                        MappedByteBuffer[] records, MappedByteBuffer[] strings) {
+        this.file = file;
+        this.createdAt = createdAt;
+        this.size = size;
+        this.dictionary = dictionary;
+        this.records = records;
+        this.strings = strings;
+    }
+
+    static Writer writer(Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    /**
+     * Отображает файл снимка в память. Страницы читаются с диска при первом обращении,
+     * поэтому открытие не зависит от размера файла, в память сразу загружается только словарь
+     */
+    static CarSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // читаем заголовок целиком
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a cars snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cars snapshot version " + version + ": " + file);
+            }
+            long createdAt = header.getLong();
+            int size = header.getInt();
+            long stringsOffset = header.getLong();
+            long dictionaryOffset = header.getLong();
+            int dictionarySize = header.getInt();
+
+            MappedByteBuffer[] records = map(channel, HEADER_SIZE, (long) size * RECORD_SIZE,
+                    (long) RECORDS_PER_CHUNK * RECORD_SIZE);
+            MappedByteBuffer[] strings = map(channel, stringsOffset, dictionaryOffset - stringsOffset, CHUNK_SIZE);
+
+            ByteBuffer dictionaryBuffer = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset,
+                    channel.size() - dictionaryOffset);
+            String[] dictionary = new String[dictionarySize];
+            int position = 0;
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary[i] = readString(dictionaryBuffer, position);
+                position += Integer.BYTES + dictionaryBuffer.getInt(position);
+            }
+            // отображение остается действительным и после закрытия канала
+            return new CarSnapshot(file, createdAt, size, dictionary, records, strings);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long id(int index) {
+        return record(index).getLong(offset(index));
+    }
+
+    double price(int index) {
+        return record(index).getDouble(offset(index) + 8);
+    }
+
+    int colorCode(int index) {
+        return record(index).getInt(offset(index) + 20);
+    }
+
+    /**
+     * @param color цвет в нижнем регистре
+     * @return для каждого номера в словаре - совпадает ли значение с цветом без учета регистра
+     */
+    boolean[] colorCodes(String color) {
+        boolean[] matches = new boolean[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            matches[i] = dictionary[i].toLowerCase(Locale.ROOT).equals(color);
+        }
+        return matches;
+    }
+
+    /**
+     * @return номер записи с этим id или -1
+     */
+    int indexOf(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = id(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    Car car(int index) {
+        ByteBuffer buffer = record(index);
+        int offset = offset(index);
+        Car car = new Car(dictionary[buffer.getInt(offset + 20)], dictionary[buffer.getInt(offset + 24)],
+                buffer.getDouble(offset + 8));
+        car.setId(buffer.getLong(offset));
+        car.setYear(buffer.getInt(offset + 16));
+        int engineType = buffer.getInt(offset + 28);
+        car.setEngineType(engineType < 0 ? null : dictionary[engineType]);
+        long imageUrl = buffer.getLong(offset + 32);
+        car.setImageUrl(imageUrl < 0 ? null : string(imageUrl));
+        return car;
+    }
+
+    private ByteBuffer record(int index) {
+        return records[index / RECORDS_PER_CHUNK];
+    }
+
+    private static int offset(int index) {
+        return (index % RECORDS_PER_CHUNK) * RECORD_SIZE;
+    }
+
+    private String string(long offset) {
+        return readString(strings[(int) (offset / CHUNK_SIZE)], (int) (offset % CHUNK_SIZE));
+    }
+
+    private static String readString(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, long position, long length, long chunkSize)
+            throws IOException {
+        int count = (int) ((length + chunkSize - 1) / chunkSize);
+        MappedByteBuffer[] buffers = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = i * chunkSize;
+            buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, Math.min(chunkSize, length - start));
+        }
+        return buffers;
+    }
+
+    /**
+     * Пишет снимок за один проход: записи сразу в файл, строки во временный файл рядом,
+     * в конце строки и словарь дописываются после записей, а заголовок - в начало.
+     * Автомобили должны добавляться по возрастанию id
+     */
+    static final class Writer implements AutoCloseable {
+
+        private final Path file;
+        private final Path stringsFile;
+        private final FileChannel channel;
+        private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE * 2048);
+        private final DataOutputStream stringsOut;
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        private long stringsSize;
+        private int size;
+        private long lastId = Long.MIN_VALUE;
+        private boolean finished;
+
+        private Writer(Path file) throws IOException {
+            this.file = file;
+            this.stringsFile = file.resolveSibling(file.getFileName() + ".strings");
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.channel.position(HEADER_SIZE);
+            this.stringsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(stringsFile), 64 * 1024));
+        }
+
+        void add(Car car) throws IOException {
+            if (car.getId() <= lastId) {
+                throw new IllegalArgumentException("Cars must be added in increasing id order");
+            }
+            lastId = car.getId();
+            recordBuffer.putLong(car.getId())
+                    .putDouble(car.getPrice())
+                    .putInt(car.getYear())
+                    .putInt(code(car.getColor()))
+                    .putInt(code(car.getModel()))
+                    .putInt(code(car.getEngineType()))
+                    .putLong(car.getImageUrl() == null ? -1 : writeString(car.getImageUrl()));
+            size++;
+            if (!recordBuffer.hasRemaining()) {
+                flushRecords();
+            }
+        }
+
+        /**
+         * Дописывает строки, словарь и заголовок и сбрасывает файл на диск
+         */
+        void finish(long createdAt) throws IOException {
+            flushRecords();
+            stringsOut.close();
+
+            long stringsOffset = channel.position();
+            try (FileChannel strings = FileChannel.open(stringsFile, StandardOpenOption.READ)) {
+                long transferred = 0;
+                while (transferred < stringsSize) {
+                    transferred += strings.transferTo(transferred, stringsSize - transferred, channel);
+                }
+            }
+            long dictionaryOffset = stringsOffset + stringsSize;
+            channel.position(dictionaryOffset);
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip();
+                writeFully(entry);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(createdAt)
+                    .putInt(size)
+                    .putLong(stringsOffset)
+                    .putLong(dictionaryOffset)
+                    .putInt(dictionary.size());
+            header.clear();
+            channel.position(0);
+            writeFully(header);
+            channel.force(true);
+            finished = true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stringsOut.close();
+            channel.close();
+            Files.deleteIfExists(stringsFile);
+            if (!finished) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        private int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+            }
+            return code;
+        }
+
+        private long writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            long length = Integer.BYTES + bytes.length;
+            long chunkEnd = (stringsSize / CHUNK_SIZE + 1) * CHUNK_SIZE;
+            if (stringsSize + length > chunkEnd) {
+                // строка не должна пересекать границу отображаемой части, дополняем нулями
+                for (long i = stringsSize; i < chunkEnd; i++) {
+                    stringsOut.write(0);
+                }
+                stringsSize = chunkEnd;
+            }
+            long offset = stringsSize;
+            stringsOut.writeInt(bytes.length);
+            stringsOut.write(bytes);
+            stringsSize += length;
+            return offset;
+        }
+
+        private void flushRecords() throws IOException {
+            recordBuffer.flip();
+            writeFully(recordBuffer);
+            recordBuffer.clear();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
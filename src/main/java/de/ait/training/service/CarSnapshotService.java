@@ -0,0 +1,436 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsDeletedEvent;
+import de.ait.training.model.Car;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Быстрый режим чтения каталога из снимка таблицы cars (CarSnapshot), отображенного в память.
+ * <p>
+ * Режим включается явно (cars.snapshot.fast-reads=true). При старте приложения файл просто отображается
+ * в память, и первые cars.snapshot.serve-minutes, пока прогреваются пулы соединений и JIT,
+ * GET /api/cars, поиск по цвету, цене и по id отвечают без запросов в базу. Потом чтения снова идут в базу,
+ * а снимок только поддерживается для следующего перезапуска.
+ * <p>
+ * Снимок пишется в фоне раз в cars.snapshot.interval-minutes порциями по cars.snapshot.chunk-size строк
+ * (WHERE id > ? ORDER BY id LIMIT ?), каждая порция - отдельный короткий запрос. Одна транзакция на всю
+ * таблицу держала бы горизонт vacuum (xmin) на время всей записи. Строки, измененные во время записи,
+ * перекрывает дельта.
+ * <p>
+ * Изменения после снимка (CarChangedEvent) хранятся в дельте: в памяти и в файле рядом
+ * со снимком (cars.snapshot.file + ".delta"), чтобы пережить перезапуск. Дельта перекрывает снимок
+ * и очищается, когда готов следующий снимок. Изменения, сделанные в обход приложения
+ * или другими экземплярами, видны только со следующего снимка.
+ */
+@Slf4j
+@Service
+public class CarSnapshotService {
+
+    private static final String SELECT_CARS =
+            "SELECT id, color, model, price, engine_type, year, image_url FROM cars WHERE id > ? ORDER BY id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long serveMs;
+    private final int chunkSize;
+    private final Path snapshotFile;
+    private final Path deltaFile;
+    private final long intervalMinutes;
+    private final long maxAgeMs;
+
+    private final Object lock = new Object();
+    private final Map<Long, DeltaEntry> delta = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private volatile CarSnapshot snapshot;
+    // дельту не удалось записать в файл: до следующего снимка чтения идут в базу
+    private volatile boolean deltaFailed;
+    private volatile long startedAt;
+    private DataOutputStream deltaOut;
+    private long sequence;
+
+    public CarSnapshotService(
+            JdbcTemplate jdbcTemplate,
+            @Value("${cars.snapshot.enabled:true}") boolean enabled,
+            @Value("${cars.snapshot.fast-reads:false}") boolean fastReads,
+            @Value("${cars.snapshot.serve-minutes:10}") long serveMinutes,
+            @Value("${cars.snapshot.file:./data/cars.snapshot}") String snapshotFileName,
+            @Value("${cars.snapshot.interval-minutes:15}") long intervalMinutes,
+            @Value("${cars.snapshot.max-age-minutes:1440}") long maxAgeMinutes,
+            @Value("${cars.snapshot.chunk-size:10000}") int chunkSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        // без быстрого режима снимок никто не читает, и писать его незачем
+        this.enabled = enabled && fastReads;
+        this.serveMs = TimeUnit.MINUTES.toMillis(serveMinutes);
+        this.chunkSize = chunkSize;
+        this.snapshotFile = Path.of(snapshotFileName);
+        this.deltaFile = Path.of(snapshotFileName + ".delta");
+        this.intervalMinutes = intervalMinutes;
+        this.maxAgeMs = TimeUnit.MINUTES.toMillis(maxAgeMinutes);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+        boolean loaded = openExistingSnapshot();
+        // дельта относится к снимку, без снимка старая дельта не нужна
+        deltaOut = openDeltaLog(loaded);
+        // без снимка первый пишем сразу, иначе ждем интервал, чтобы не нагружать базу во время деплоя
+        scheduler.scheduleWithFixedDelay(this::writeSnapshot, loaded ? intervalMinutes : 0, intervalMinutes,
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return true, если чтения можно обслуживать из снимка: он есть, дельта записана
+     * и не прошло cars.snapshot.serve-minutes после старта (0 - без ограничения)
+     */
+    public boolean isServing() {
+        return enabled && snapshot != null && !deltaFailed
+                && (serveMs <= 0 || System.currentTimeMillis() - startedAt < serveMs);
+    }
+
+    public List<Car> findAll() {
+        return find((current, index) -> true, car -> true);
+    }
+
+    /**
+     * @return автомобиль или null, если его нет
+     */
+    public Car findById(long id) {
+        DeltaEntry entry = delta.get(id);
+        if (entry != null) {
+            return entry.car() == null ? null : copy(entry.car());
+        }
+        CarSnapshot current = snapshot;
+        int index = current.indexOf(id);
+        return index < 0 ? null : current.car(index);
+    }
+
+    /**
+     * @param color цвет в нижнем регистре
+     */
+    public List<Car> findByColor(String color) {
+        CarSnapshot current = snapshot;
+        boolean[] colorCodes = current.colorCodes(color);
+        return find(current, (records, index) -> colorCodes[records.colorCode(index)],
+                car -> car.getColor().equalsIgnoreCase(color));
+    }
+
+    public List<Car> findByPriceBetween(double min, double max) {
+        return find((records, index) -> {
+            double price = records.price(index);
+            return price >= min && price <= max;
+        }, car -> car.getPrice() >= min && car.getPrice() <= max);
+    }
+
+    public List<Car> findByPriceLessThanEqual(double max) {
+        return find((records, index) -> records.price(index) <= max, car -> car.getPrice() <= max);
+    }
+
+    public List<Car> findByPriceGreaterThanEqual(double min) {
+        return find((records, index) -> records.price(index) >= min, car -> car.getPrice() >= min);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarChanged(CarChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Car car = event.getType() == CarChangeType.DELETED || event.getCar() == null ? null : copy(event.getCar());
+        synchronized (lock) {
+            delta.put(event.getCarId(), new DeltaEntry(++sequence, car));
+            if (deltaFailed) {
+                return;
+            }
+            try {
+                writeDeltaEntry(deltaOut, event.getCarId(), car);
+                deltaOut.flush();
+            } catch (IOException e) {
+                stopServing(e);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarsDeleted(CarsDeletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            for (Long carId : event.getCarIds()) {
+                delta.put(carId, new DeltaEntry(++sequence, null));
+            }
+            if (deltaFailed) {
+                return;
+            }
+            try {
+                for (Long carId : event.getCarIds()) {
+                    writeDeltaEntry(deltaOut, carId, null);
+                }
+                deltaOut.flush();
+            } catch (IOException e) {
+                stopServing(e);
+            }
+        }
+    }
+
+    /**
+     * Пишет новый снимок во временный файл, атомарно заменяет им старый и отображает в память.
+     * Изменения, пришедшие после начала записи, остаются в дельте
+     */
+    void writeSnapshot() {
+        long start = System.currentTimeMillis();
+        long mark;
+        synchronized (lock) {
+            mark = sequence + 1;
+        }
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (CarSnapshot.Writer writer = CarSnapshot.writer(tempFile)) {
+            long afterId = Long.MIN_VALUE;
+            List<Car> chunk;
+            do {
+                // каждая порция - отдельный запрос в autocommit, долгой транзакции нет
+                chunk = jdbcTemplate.query(SELECT_CARS, (resultSet, rowNum) -> {
+                    Car car = new Car(resultSet.getString("color"), resultSet.getString("model"),
+                            resultSet.getDouble("price"));
+                    car.setId(resultSet.getLong("id"));
+                    car.setEngineType(resultSet.getString("engine_type"));
+                    car.setYear(resultSet.getInt("year"));
+                    car.setImageUrl(resultSet.getString("image_url"));
+                    return car;
+                }, afterId, chunkSize);
+                for (Car car : chunk) {
+                    writer.add(car);
+                }
+                if (!chunk.isEmpty()) {
+                    afterId = chunk.get(chunk.size() - 1).getId();
+                }
+            } while (chunk.size() == chunkSize);
+            writer.finish(start);
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            CarSnapshot written = CarSnapshot.open(snapshotFile);
+
+            synchronized (lock) {
+                snapshot = written;
+                delta.values().removeIf(entry -> entry.sequence() < mark);
+                try {
+                    rewriteDeltaLog();
+                    if (deltaFailed) {
+                        log.info("Cars snapshot delta log {} is written again, reads are served from the snapshot",
+                                deltaFile);
+                    }
+                    deltaFailed = false;
+                } catch (IOException e) {
+                    stopServing(e);
+                    return;
+                }
+            }
+            log.info("Cars snapshot with {} cars written in {} ms, {} changes kept in delta",
+                    writer.size(), System.currentTimeMillis() - start, delta.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Can not write cars snapshot {}", snapshotFile, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        scheduler.shutdownNow();
+        synchronized (lock) {
+            if (deltaOut != null) {
+                deltaOut.close();
+            }
+        }
+    }
+
+    /**
+     * Вызывается под lock. Файл дельты неполный: снимок с ним после перезапуска показал бы старые данные,
+     * поэтому снимок удаляется, а чтения идут в базу до следующего удачно записанного снимка.
+     * До него дельта копится только в памяти: файл закрыт, запись в него не повторяется, ошибка пишется в лог один раз
+     */
+    private void stopServing(IOException e) {
+        if (deltaFailed) {
+            return;
+        }
+        deltaFailed = true;
+        try {
+            deltaOut.close();
+        } catch (IOException closeError) {
+            // недописанный буфер уже не нужен
+        }
+        deltaOut = null;
+        log.error("Can not write cars snapshot delta log {}, reads go to the database until the next snapshot",
+                deltaFile, e);
+        try {
+            Files.deleteIfExists(snapshotFile);
+        } catch (IOException deleteError) {
+            log.error("Can not delete cars snapshot {}", snapshotFile, deleteError);
+        }
+    }
+
+    private List<Car> find(RecordFilter snapshotFilter, Predicate<Car> deltaFilter) {
+        return find(snapshot, snapshotFilter, deltaFilter);
+    }
+
+    /**
+     * Записи снимка, прошедшие фильтр и не перекрытые дельтой, плюс подходящие автомобили из дельты.
+     * Снимок берется один раз, чтобы его замена во время обхода не смешала записи двух файлов
+     */
+    private List<Car> find(CarSnapshot current, RecordFilter snapshotFilter, Predicate<Car> deltaFilter) {
+        List<Car> result = new ArrayList<>();
+        boolean checkDelta = !delta.isEmpty();
+        for (int index = 0; index < current.size(); index++) {
+            if (snapshotFilter.test(current, index) && !(checkDelta && delta.containsKey(current.id(index)))) {
+                result.add(current.car(index));
+            }
+        }
+        for (DeltaEntry entry : delta.values()) {
+            if (entry.car() != null && deltaFilter.test(entry.car())) {
+                result.add(copy(entry.car()));
+            }
+        }
+        return result;
+    }
+
+    private boolean openExistingSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        try {
+            CarSnapshot existing = CarSnapshot.open(snapshotFile);
+            if (existing.getCreatedAt() < System.currentTimeMillis() - maxAgeMs) {
+                log.info("Cars snapshot {} is older than {} minutes, not used", snapshotFile,
+                        TimeUnit.MILLISECONDS.toMinutes(maxAgeMs));
+                Files.deleteIfExists(deltaFile);
+                return false;
+            }
+            replayDeltaLog();
+            snapshot = existing;
+            log.info("Cars snapshot {} with {} cars mapped, {} changes replayed from delta",
+                    snapshotFile, existing.size(), delta.size());
+            return true;
+        } catch (IOException e) {
+            log.warn("Can not open cars snapshot {}", snapshotFile, e);
+            return false;
+        }
+    }
+
+    private void replayDeltaLog() throws IOException {
+        if (!Files.exists(deltaFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(deltaFile)))) {
+            while (true) {
+                long id = in.readLong();
+                Car car = null;
+                if (in.readBoolean()) {
+                    car = new Car(in.readUTF(), in.readUTF(), in.readDouble());
+                    car.setId(id);
+                    car.setYear(in.readInt());
+                    car.setEngineType(readNullableUTF(in));
+                    car.setImageUrl(readNullableUTF(in));
+                }
+                delta.put(id, new DeltaEntry(++sequence, car));
+            }
+        } catch (EOFException e) {
+            // конец файла, или последняя запись не дописана до остановки приложения
+        }
+    }
+
+    /**
+     * Вызывается под lock: в новом файле дельты остаются только изменения после снимка
+     */
+    private void rewriteDeltaLog() throws IOException {
+        Path tempFile = deltaFile.resolveSibling(deltaFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            for (Map.Entry<Long, DeltaEntry> entry : delta.entrySet()) {
+                writeDeltaEntry(out, entry.getKey(), entry.getValue().car());
+            }
+        }
+        if (deltaOut != null) {
+            deltaOut.close();
+        }
+        Files.move(tempFile, deltaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deltaOut = openDeltaLog(true);
+    }
+
+    private DataOutputStream openDeltaLog(boolean append) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(deltaFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)));
+    }
+
+    private static void writeDeltaEntry(DataOutputStream out, long id, Car car) throws IOException {
+        out.writeLong(id);
+        out.writeBoolean(car != null);
+        if (car != null) {
+            out.writeUTF(car.getColor());
+            out.writeUTF(car.getModel());
+            out.writeDouble(car.getPrice());
+            out.writeInt(car.getYear());
+            writeNullableUTF(out, car.getEngineType());
+            writeNullableUTF(out, car.getImageUrl());
+        }
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Car copy(Car car) {
+        Car copy = new Car(car.getColor(), car.getModel(), car.getPrice());
+        copy.setId(car.getId());
+        copy.setYear(car.getYear());
+        copy.setEngineType(car.getEngineType());
+        copy.setImageUrl(car.getImageUrl());
+        return copy;
+    }
+
+    /**
+     * @param car состояние после изменения, null - автомобиль удален
+     */
+    private record DeltaEntry(long sequence, Car car) {
+    }
+
+    @FunctionalInterface
+    private interface RecordFilter {
+        boolean test(CarSnapshot snapshot, int index);
+    }
+}
@@ -0,0 +1,144 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStatsDto;
+import de.ait.training.model.Car;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Агрегаты по автомобилям, которые можно обновлять по одной записи.
+ * Для каждого id храним то, что уже учтено, поэтому повторное применение
+ * одного и того же изменения ничего не ломает. Класс не потокобезопасный,
+ * синхронизация на стороне CarStatsService.
+ * <p>
+ * Учет по id стоит около 100 байт кучи на автомобиль (узел HashMap, Long, Entry; строки цвета
+ * и двигателя общие). Поэтому он ограничен: без него (trackCars = false или после stopTracking)
+ * агрегаты можно только набрать заново, а изменения по одной записи не применяются.
+ */
+class CarStatsAggregator {
+
+    static final String UNKNOWN = "unknown";
+
+    private final double bucketWidth;
+
+    // null - учет по id выключен
+    private Map<Long, Entry> cars;
+    // одна копия каждого значения цвета и двигателя на все автомобили
+    private final Map<String, String> names = new HashMap<>();
+    private final Map<String, Long> countByColor = new HashMap<>();
+    private final Map<String, Long> countByEngineType = new HashMap<>();
+    private final TreeMap<Double, Long> prices = new TreeMap<>();
+    private final TreeMap<Long, Long> buckets = new TreeMap<>();
+    private double priceSum;
+    private long total;
+
+    CarStatsAggregator(double bucketWidth) {
+        this(bucketWidth, true);
+    }
+
+    CarStatsAggregator(double bucketWidth, boolean trackCars) {
+        this.bucketWidth = bucketWidth;
+        this.cars = trackCars ? new HashMap<>() : null;
+    }
+
+    boolean isTracking() {
+        return cars != null;
+    }
+
+    long size() {
+        return total;
+    }
+
+    /**
+     * Освобождает учет по id, агрегаты остаются как есть
+     */
+    void stopTracking() {
+        cars = null;
+    }
+
+    void upsert(Car car) {
+        Entry entry = new Entry(name(car.getColor()), name(car.getEngineType()), car.getPrice());
+        if (cars != null) {
+            remove(car.getId());
+            cars.put(car.getId(), entry);
+        }
+        total++;
+        countByColor.merge(entry.color(), 1L, Long::sum);
+        countByEngineType.merge(entry.engineType(), 1L, Long::sum);
+        prices.merge(entry.price(), 1L, Long::sum);
+        buckets.merge(bucketOf(entry.price()), 1L, Long::sum);
+        priceSum += entry.price();
+    }
+
+    void remove(Long id) {
+        if (cars == null) {
+            throw new IllegalStateException("Cars are not tracked by id");
+        }
+        Entry entry = cars.remove(id);
+        if (entry == null) {
+            return;
+        }
+        total--;
+        decrement(countByColor, entry.color());
+        decrement(countByEngineType, entry.engineType());
+        decrement(prices, entry.price());
+        decrement(buckets, bucketOf(entry.price()));
+        priceSum -= entry.price();
+    }
+
+    /**
+     * Добавляет результаты другого агрегатора (используется при параллельном пересчете)
+     */
+    void merge(CarStatsAggregator other) {
+        if (cars != null && other.cars != null) {
+            other.cars.forEach((id, entry) -> {
+                remove(id);
+                cars.put(id, entry);
+            });
+        } else {
+            cars = null;
+        }
+        total += other.total;
+        other.countByColor.forEach((key, count) -> countByColor.merge(key, count, Long::sum));
+        other.countByEngineType.forEach((key, count) -> countByEngineType.merge(key, count, Long::sum));
+        other.prices.forEach((key, count) -> prices.merge(key, count, Long::sum));
+        other.buckets.forEach((key, count) -> buckets.merge(key, count, Long::sum));
+        priceSum += other.priceSum;
+    }
+
+    CarStatsDto toDto() {
+        Map<Double, Long> histogram = new LinkedHashMap<>();
+        buckets.forEach((bucket, count) -> histogram.put(bucket * bucketWidth, count));
+        return new CarStatsDto(
+                total,
+                Collections.unmodifiableMap(new TreeMap<>(countByColor)),
+                Collections.unmodifiableMap(new TreeMap<>(countByEngineType)),
+                prices.isEmpty() ? null : prices.firstKey(),
+                prices.isEmpty() ? null : prices.lastKey(),
+                total == 0 ? null : priceSum / total,
+                bucketWidth,
+                Collections.unmodifiableMap(histogram)
+        );
+    }
+
+    private long bucketOf(double price) {
+        return (long) Math.floor(price / bucketWidth);
+    }
+
+    private String name(String value) {
+        String normalized = value == null || value.isBlank() ? UNKNOWN : value.trim().toLowerCase(Locale.ROOT);
+        return names.computeIfAbsent(normalized, key -> key);
+    }
+
+    private static <K> void decrement(Map<K, Long> map, K key) {
+        map.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private record Entry(String color, String engineType, double price) {
+    }
+}
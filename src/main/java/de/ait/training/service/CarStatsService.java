@@ -0,0 +1,264 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStatsDto;
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsDeletedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика по каталогу для GET /api/cars/stats.
+ * <p>
+ * Держится в памяти и обновляется по событиям CarChangedEvent, поэтому запрос статистики
+ * не ходит в базу. При старте приложения статистика один раз пересчитывается полностью:
+ * диапазон id делится на части, которые читаются из базы параллельно, но не больше
+ * cars.stats.load-parallelism частей одновременно, чтобы не занять весь пул соединений.
+ * Если пересчет не удался, остается прежняя статистика, а пересчет повторяется
+ * через cars.stats.retry-delay-seconds.
+ * <p>
+ * Изменения по одной записи требуют учета по id (около 100 байт на автомобиль, см. CarStatsAggregator),
+ * поэтому он ведется, только пока автомобилей не больше cars.stats.max-tracked-cars. Для большего каталога
+ * изменения не применяются, а вызывают полный пересчет не чаще раза в cars.stats.retry-delay-seconds.
+ * Изменения, пришедшие во время пересчета, копятся не больше cars.stats.max-pending-events:
+ * при переполнении они отбрасываются, и после текущего пересчета сразу запускается следующий.
+ */
+@Slf4j
+@Service
+public class CarStatsService {
+
+    private final CarRepository repository;
+    private final double bucketWidth;
+    private final int loadChunkSize;
+    private final int loadParallelism;
+    private final long retryDelaySeconds;
+    private final long maxTrackedCars;
+    private final int maxPendingEvents;
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    private CarStatsAggregator aggregator;
+    // изменения, пришедшие во время полного пересчета, применяются поверх его результата
+    private List<CarChangedEvent> pendingEvents = new ArrayList<>();
+    // pendingEvents переполнился: результат текущего пересчета может быть неполным
+    private boolean pendingOverflowed;
+    private boolean refreshScheduled;
+    private volatile CarStatsDto snapshot;
+    private volatile boolean loaded;
+
+    public CarStatsService(
+            CarRepository repository,
+            @Value("${cars.stats.price-bucket-width:10000}") double bucketWidth,
+            @Value("${cars.stats.load-chunk-size:10000}") int loadChunkSize,
+            @Value("${cars.stats.load-parallelism:4}") int loadParallelism,
+            @Value("${cars.stats.retry-delay-seconds:60}") long retryDelaySeconds,
+            @Value("${cars.stats.max-tracked-cars:1000000}") long maxTrackedCars,
+            @Value("${cars.stats.max-pending-events:100000}") int maxPendingEvents
+    ) {
+        this.repository = repository;
+        this.bucketWidth = bucketWidth;
+        this.loadChunkSize = loadChunkSize;
+        this.loadParallelism = loadParallelism;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.maxTrackedCars = maxTrackedCars;
+        this.maxPendingEvents = maxPendingEvents;
+        this.aggregator = new CarStatsAggregator(bucketWidth);
+    }
+
+    /**
+     * @return текущая статистика или null, если начальный пересчет еще не закончен
+     */
+    public CarStatsDto getStats() {
+        if (!loaded) {
+            return null;
+        }
+        CarStatsDto current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            if (snapshot == null) {
+                snapshot = aggregator.toDto();
+            }
+            return snapshot;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarChanged(CarChangedEvent event) {
+        synchronized (lock) {
+            record(event);
+            snapshot = null;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarsDeleted(CarsDeletedEvent event) {
+        synchronized (lock) {
+            for (Long carId : event.getCarIds()) {
+                record(new CarChangedEvent(CarChangeType.DELETED, carId, null));
+            }
+            snapshot = null;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recompute() {
+        long start = System.currentTimeMillis();
+        synchronized (lock) {
+            // отброшенные изменения уже закоммичены, новый пересчет их прочитает
+            if (pendingEvents == null || pendingOverflowed) {
+                pendingEvents = new ArrayList<>();
+                pendingOverflowed = false;
+            }
+        }
+
+        CarStatsAggregator result;
+        try {
+            result = load();
+        } catch (RuntimeException e) {
+            log.error("Car statistics recompute failed, retry in {} s", retryDelaySeconds, e);
+            synchronized (lock) {
+                // прежняя статистика остается, изменения применяются к ней;
+                // до первого удачного пересчета изменения копятся
+                if (loaded && !pendingOverflowed) {
+                    applyPending();
+                    pendingEvents = null;
+                    snapshot = null;
+                }
+            }
+            retryScheduler.schedule(this::recompute, retryDelaySeconds, TimeUnit.SECONDS);
+            return;
+        }
+
+        boolean overflowed;
+        synchronized (lock) {
+            aggregator = result;
+            overflowed = pendingOverflowed;
+            pendingOverflowed = false;
+            if (!overflowed) {
+                applyPending();
+            }
+            pendingEvents = null;
+            snapshot = null;
+            loaded = true;
+        }
+        log.info("Car statistics recomputed in {} ms", System.currentTimeMillis() - start);
+        if (overflowed) {
+            log.warn("More than {} car changes during the recompute, recomputing again", maxPendingEvents);
+            retryScheduler.execute(this::recompute);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    private CarStatsAggregator load() {
+        boolean track = repository.count() <= maxTrackedCars;
+        if (!track) {
+            log.info("More than {} cars, statistics is recomputed on changes instead of being updated",
+                    maxTrackedCars);
+        }
+        CarStatsAggregator result = new CarStatsAggregator(bucketWidth, track);
+        Long minId = repository.findMinId();
+        Long maxId = repository.findMaxId();
+        if (minId == null) {
+            return result;
+        }
+        // виртуальных потоков сколько угодно, а соединений в пуле нет: ограничиваем число запросов
+        Semaphore permits = new Semaphore(loadParallelism);
+        List<CompletableFuture<CarStatsAggregator>> parts = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long from = minId; from <= maxId; from += loadChunkSize) {
+                long chunkFrom = from;
+                long chunkTo = Math.min(from + loadChunkSize - 1, maxId);
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        return loadRange(chunkFrom, chunkTo, track);
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            }
+            parts.forEach(part -> result.merge(part.join()));
+        }
+        return result;
+    }
+
+    private CarStatsAggregator loadRange(long from, long to, boolean track) {
+        CarStatsAggregator part = new CarStatsAggregator(bucketWidth, track);
+        for (Car car : repository.findByIdBetween(from, to)) {
+            part.upsert(car);
+        }
+        return part;
+    }
+
+    /**
+     * Вызывается под lock
+     */
+    private void record(CarChangedEvent event) {
+        if (pendingEvents == null) {
+            apply(event);
+        } else if (pendingOverflowed) {
+            // следующий пересчет прочитает это изменение из базы
+        } else if (pendingEvents.size() < maxPendingEvents) {
+            pendingEvents.add(event);
+        } else {
+            pendingOverflowed = true;
+            pendingEvents = new ArrayList<>();
+        }
+    }
+
+    private void applyPending() {
+        pendingEvents.forEach(this::apply);
+    }
+
+    private void apply(CarChangedEvent event) {
+        if (!aggregator.isTracking()) {
+            scheduleRefresh();
+            return;
+        }
+        if (event.getType() == CarChangeType.DELETED || event.getCar() == null) {
+            aggregator.remove(event.getCarId());
+        } else {
+            aggregator.upsert(event.getCar());
+        }
+        if (aggregator.size() > maxTrackedCars) {
+            log.info("More than {} cars, statistics is recomputed on changes instead of being updated",
+                    maxTrackedCars);
+            aggregator.stopTracking();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        retryScheduler.schedule(() -> {
+            synchronized (lock) {
+                refreshScheduled = false;
+            }
+            recompute();
+        }, retryDelaySeconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,71 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.EmailCampaignStatusDto;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Состояние одной рассылки, обновляется параллельно из нескольких потоков отправки
+ */
+class EmailCampaign {
+
+    enum Status { RUNNING, COMPLETED }
+
+    private final String id;
+    private final int total;
+    private final Instant startedAt = Instant.now();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger pendingBatches;
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+    private volatile Instant finishedAt;
+
+    EmailCampaign(String id, int total, int batches) {
+        this.id = id;
+        this.total = total;
+        this.pendingBatches = new AtomicInteger(batches);
+        if (batches == 0) {
+            finishedAt = startedAt;
+        }
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void markSent(int count) {
+        sent.addAndGet(count);
+    }
+
+    /**
+     * @param reason сообщение исключения, может быть null
+     */
+    void markFailed(String email, String reason) {
+        failed.incrementAndGet();
+        // ConcurrentHashMap не принимает null, а ошибка одного письма не должна прерывать пачку
+        failures.put(String.valueOf(email), String.valueOf(reason));
+    }
+
+    /**
+     * @return время завершения или null, пока рассылка идет
+     */
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    void batchFinished() {
+        if (pendingBatches.decrementAndGet() == 0) {
+            finishedAt = Instant.now();
+        }
+    }
+
+    EmailCampaignStatusDto toDto() {
+        Status status = finishedAt == null ? Status.RUNNING : Status.COMPLETED;
+        return new EmailCampaignStatusDto(id, status.name(), total, sent.get(), failed.get(),
+                startedAt, finishedAt, new TreeMap<>(failures));
+    }
+}
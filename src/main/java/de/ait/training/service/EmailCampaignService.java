@@ -0,0 +1,245 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.EmailCampaignRequest;
+import de.ait.training.dto.EmailCampaignStatusDto;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Массовые рассылки по шаблону.
+ * <p>
+ * Шаблон обрабатывается Thymeleaf один раз на всю рассылку, для каждого получателя
+ * подставляются только его персональные значения (см. PreparedTemplate).
+ * Письма отправляются пачками: каждая пачка уходит через одно SMTP-соединение,
+ * одновременно открыто не больше app.mail.campaign.connections соединений,
+ * общая скорость ограничена app.mail.campaign.max-per-second (0 - без ограничения).
+ * Состояние завершенных рассылок хранится app.mail.campaign.retention-minutes,
+ * но не больше app.mail.campaign.max-kept рассылок.
+ */
+@Slf4j
+@Service
+public class EmailCampaignService {
+
+    private final JavaMailSender mailSender;
+    private final TemplateEngine templateEngine;
+    private final String fromAddress;
+    private final int batchSize;
+    private final long nanosPerMessage;
+    private final Duration retention;
+    private final int maxKept;
+
+    private final ExecutorService senders;
+    private final AtomicLong nextSendAt = new AtomicLong(System.nanoTime());
+    private final Map<String, EmailCampaign> campaigns = new ConcurrentHashMap<>();
+
+    public EmailCampaignService(
+            JavaMailSender mailSender,
+            TemplateEngine templateEngine,
+            @Value("${app.mail.from.address}") String fromAddress,
+            @Value("${app.mail.campaign.connections:4}") int connections,
+            @Value("${app.mail.campaign.batch-size:50}") int batchSize,
+            @Value("${app.mail.campaign.max-per-second:0}") int maxPerSecond,
+            @Value("${app.mail.campaign.retention-minutes:1440}") long retentionMinutes,
+            @Value("${app.mail.campaign.max-kept:1000}") int maxKept
+    ) {
+        this.mailSender = mailSender;
+        this.templateEngine = templateEngine;
+        this.fromAddress = fromAddress;
+        this.batchSize = batchSize;
+        this.nanosPerMessage = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+        this.senders = Executors.newFixedThreadPool(connections);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.maxKept = maxKept;
+    }
+
+    /**
+     * Запускает рассылку и сразу возвращает ее id, письма отправляются в фоне
+     *
+     * @throws IllegalArgumentException если у какого-то получателя не задан адрес
+     *                                  или шаблон изменяет персональную переменную (см. PreparedTemplate)
+     */
+    public String startCampaign(EmailCampaignRequest request) {
+        List<EmailCampaignRequest.Recipient> recipients = request.getRecipients() == null
+                ? List.of() : request.getRecipients();
+        for (int i = 0; i < recipients.size(); i++) {
+            EmailCampaignRequest.Recipient recipient = recipients.get(i);
+            if (recipient == null || recipient.getEmail() == null || recipient.getEmail().isBlank()) {
+                throw new IllegalArgumentException("Recipient " + i + " has no email");
+            }
+        }
+        evictFinished();
+
+        Set<String> personalVariables = new HashSet<>();
+        recipients.forEach(recipient -> {
+            if (recipient.getVariables() != null) {
+                personalVariables.addAll(recipient.getVariables().keySet());
+            }
+        });
+        PreparedTemplate template = prepare(request, personalVariables);
+
+        int batches = (recipients.size() + batchSize - 1) / batchSize;
+        EmailCampaign campaign = new EmailCampaign(UUID.randomUUID().toString(), recipients.size(), batches);
+        campaigns.put(campaign.getId(), campaign);
+        log.info("Email campaign {} started: {} recipients, {} batches", campaign.getId(), recipients.size(), batches);
+
+        for (int from = 0; from < recipients.size(); from += batchSize) {
+            List<EmailCampaignRequest.Recipient> batch =
+                    recipients.subList(from, Math.min(from + batchSize, recipients.size()));
+            senders.execute(() -> sendBatch(campaign, request.getSubject(), template, batch));
+        }
+        return campaign.getId();
+    }
+
+    /**
+     * @return состояние рассылки или null, если такой нет
+     */
+    public EmailCampaignStatusDto getStatus(String id) {
+        EmailCampaign campaign = campaigns.get(id);
+        return campaign == null ? null : campaign.toDto();
+    }
+
+    /**
+     * Удаляет завершенные рассылки старше срока хранения, а если их все равно больше max-kept -
+     * самые старые из завершенных. Идущие рассылки не удаляются
+     */
+    private void evictFinished() {
+        Instant expired = Instant.now().minus(retention);
+        campaigns.values().removeIf(campaign ->
+                campaign.getFinishedAt() != null && campaign.getFinishedAt().isBefore(expired));
+        int excess = campaigns.size() - maxKept + 1;
+        if (excess > 0) {
+            campaigns.values().stream()
+                    .filter(campaign -> campaign.getFinishedAt() != null)
+                    .sorted(Comparator.comparing(EmailCampaign::getFinishedAt))
+                    .limit(excess)
+                    .toList()
+                    .forEach(campaign -> campaigns.remove(campaign.getId()));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private PreparedTemplate prepare(EmailCampaignRequest request, Set<String> personalVariables) {
+        Map<String, Object> variables = new HashMap<>();
+        if (request.getVariables() != null) {
+            variables.putAll(request.getVariables());
+        }
+        // общее значение остается запасным для получателей без своего значения
+        Map<String, String> defaults = new HashMap<>();
+        personalVariables.forEach(name -> {
+            Object shared = variables.put(name, PreparedTemplate.marker(name));
+            if (shared != null) {
+                defaults.put(name, String.valueOf(shared));
+            }
+        });
+
+        Context context = new Context();
+        context.setVariables(variables);
+        return new PreparedTemplate(templateEngine.process(request.getTemplate(), context), personalVariables,
+                defaults);
+    }
+
+    private void sendBatch(EmailCampaign campaign, String subject, PreparedTemplate template,
+                           List<EmailCampaignRequest.Recipient> batch) {
+        try {
+            List<MimeMessage> messages = new ArrayList<>(batch.size());
+            Map<MimeMessage, String> addresses = new HashMap<>();
+            for (EmailCampaignRequest.Recipient recipient : batch) {
+                try {
+                    MimeMessage message = createMessage(recipient, subject, template);
+                    messages.add(message);
+                    addresses.put(message, recipient.getEmail());
+                } catch (MessagingException | RuntimeException e) {
+                    campaign.markFailed(recipient.getEmail(), e.getMessage());
+                }
+            }
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            throttle(messages.size());
+            try {
+                // одно SMTP-соединение на всю пачку
+                mailSender.send(messages.toArray(new MimeMessage[0]));
+                campaign.markSent(messages.size());
+            } catch (MailSendException e) {
+                Map<Object, Exception> failedMessages = e.getFailedMessages();
+                if (failedMessages.isEmpty()) {
+                    messages.forEach(message -> campaign.markFailed(addresses.get(message), e.getMessage()));
+                } else {
+                    failedMessages.forEach((message, exception) ->
+                            campaign.markFailed(addresses.get(message), exception.getMessage()));
+                    campaign.markSent(messages.size() - failedMessages.size());
+                }
+            } catch (MailException e) {
+                log.error("Email campaign {}: batch failed", campaign.getId(), e);
+                messages.forEach(message -> campaign.markFailed(addresses.get(message), e.getMessage()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            campaign.batchFinished();
+        }
+    }
+
+    private MimeMessage createMessage(EmailCampaignRequest.Recipient recipient, String subject,
+                                      PreparedTemplate template) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
+                StandardCharsets.UTF_8.name());
+        helper.setFrom(fromAddress);
+        helper.setTo(recipient.getEmail());
+        helper.setSubject(subject);
+        helper.setText(template.render(recipient.getVariables() == null ? Map.of() : recipient.getVariables()), true);
+        return mimeMessage;
+    }
+
+    /**
+     * Ограничение скорости: каждое письмо пачки занимает свой временной слот, слоты пачки идут подряд.
+     * Пачка уходит одним SMTP-соединением сразу целиком, поэтому поток ждет начала слота
+     * последнего ее письма: ни одно письмо не уходит раньше своего слота
+     */
+    private void throttle(int messages) throws InterruptedException {
+        if (nanosPerMessage == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long previous = nextSendAt.getAndAccumulate(messages * nanosPerMessage,
+                (current, delta) -> Math.max(current, now) + delta);
+        long firstSlot = Math.max(previous, now);
+        long waitNanos = firstSlot + (messages - 1) * nanosPerMessage - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
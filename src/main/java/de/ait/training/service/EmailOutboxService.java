@@ -0,0 +1,176 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.model.EmailOutboxMessage;
+import de.ait.training.model.EmailOutboxStatus;
+import de.ait.training.repository.EmailOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Очередь исходящих писем в таблице email_outbox.
+ * <p>
+ * Каждое письмо забирается на время аренды (lease): строка блокируется через
+ * SELECT ... FOR UPDATE SKIP LOCKED, помечается SENDING и транзакция сразу коммитится,
+ * так что SMTP-запрос не держит транзакцию открытой. Если экземпляр упал во время отправки,
+ * после окончания аренды письмо заберет другой экземпляр. Перед отправкой каждого письма аренда
+ * продлевается (extendLease), а markSent и markFailed меняют письмо, только пока аренда принадлежит
+ * этой попытке: опоздавший экземпляр не перезапишет состояние письма, которое уже забрал другой.
+ * Доставка "хотя бы один раз": падение между SMTP-отправкой и markSent приводит к повторной отправке. Поэтому у всех попыток
+ * одного письма одинаковый Message-ID (см. messageId), по нему получатель может отбросить дубликат.
+ */
+@Slf4j
+@Service
+public class EmailOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final EmailOutboxRepository repository;
+    private final ObjectMapper objectMapper;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+
+    public EmailOutboxService(
+            EmailOutboxRepository repository,
+            ObjectMapper objectMapper,
+            @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${app.mail.outbox.backoff-initial-seconds:10}") long initialBackoffSeconds,
+            @Value("${app.mail.outbox.backoff-max-seconds:3600}") long maxBackoffSeconds,
+            @Value("${app.mail.outbox.lease-seconds:300}") long leaseSeconds
+    ) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofSeconds(initialBackoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+    }
+
+    @Transactional
+    public EmailOutboxMessage enqueue(String to, String subject, String template, Map<String, Object> variables) {
+        try {
+            EmailOutboxMessage message = new EmailOutboxMessage(to, subject, template,
+                    objectMapper.writeValueAsString(variables));
+            repository.save(message);
+            log.info("Email to {} with subject {} queued, id = {}", to, subject, message.getId());
+            return message;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email variables can not be serialized", e);
+        }
+    }
+
+    /**
+     * Забирает пачку писем для отправки этим экземпляром
+     */
+    @Transactional
+    public List<EmailOutboxMessage> claimBatch(int limit) {
+        List<EmailOutboxMessage> batch = repository.lockBatchForSending(limit);
+        Instant lockedUntil = Instant.now().plus(lease);
+        for (EmailOutboxMessage message : batch) {
+            message.setStatus(EmailOutboxStatus.SENDING);
+            message.setLockedUntil(lockedUntil);
+            message.setAttempts(message.getAttempts() + 1);
+        }
+        return batch;
+    }
+
+    /**
+     * Продлевает аренду письма на lease-seconds от текущего момента, вызывается перед отправкой
+     *
+     * @return false, если аренда уже не принадлежит этой попытке и письмо отправлять нельзя
+     */
+    @Transactional
+    public boolean extendLease(EmailOutboxMessage claimed) {
+        return findClaimed(claimed).map(message -> {
+            message.setLockedUntil(Instant.now().plus(lease));
+            return true;
+        }).orElse(false);
+    }
+
+    /**
+     * @return false, если аренда уже не принадлежит этой попытке и письмо не изменено
+     */
+    @Transactional
+    public boolean markSent(EmailOutboxMessage claimed) {
+        return findClaimed(claimed).map(message -> {
+            message.setStatus(EmailOutboxStatus.SENT);
+            message.setSentAt(Instant.now());
+            message.setLockedUntil(null);
+            message.setLastError(null);
+            return true;
+        }).orElse(false);
+    }
+
+    /**
+     * Ставит письмо на повтор с экспоненциальной задержкой или помечает FAILED,
+     * если попытки закончились
+     *
+     * @return false, если аренда уже не принадлежит этой попытке и письмо не изменено
+     */
+    @Transactional
+    public boolean markFailed(EmailOutboxMessage claimed, Exception error) {
+        Long id = claimed.getId();
+        return findClaimed(claimed).map(message -> {
+            String reason = String.valueOf(error.getMessage());
+            message.setLastError(reason.length() > MAX_ERROR_LENGTH ? reason.substring(0, MAX_ERROR_LENGTH) : reason);
+            message.setLockedUntil(null);
+            if (message.getAttempts() >= maxAttempts) {
+                message.setStatus(EmailOutboxStatus.FAILED);
+                log.error("Email {} to {} failed after {} attempts", id, message.getRecipient(), message.getAttempts());
+            } else {
+                Duration backoff = backoff(message.getAttempts());
+                message.setStatus(EmailOutboxStatus.PENDING);
+                message.setNextAttemptAt(Instant.now().plus(backoff));
+                log.warn("Email {} to {} failed, retry in {} s", id, message.getRecipient(), backoff.toSeconds());
+            }
+            return true;
+        }).orElse(false);
+    }
+
+    /**
+     * @return локальная часть Message-ID, постоянная для всех попыток отправки письма
+     */
+    public String messageId(EmailOutboxMessage message) {
+        return "outbox-" + message.getId() + "." + message.getCreatedAt().toEpochMilli();
+    }
+
+    public Map<String, Object> readVariables(EmailOutboxMessage message) {
+        if (message.getVariables() == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(message.getVariables(), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Email " + message.getId() + " has broken variables", e);
+        }
+    }
+
+    private Optional<EmailOutboxMessage> findClaimed(EmailOutboxMessage claimed) {
+        Optional<EmailOutboxMessage> message = repository.findByIdAndStatusAndAttempts(
+                claimed.getId(), EmailOutboxStatus.SENDING, claimed.getAttempts());
+        if (message.isEmpty()) {
+            log.warn("Email {} lease of attempt {} is lost, the message belongs to another worker",
+                    claimed.getId(), claimed.getAttempts());
+        }
+        return message;
+    }
+
+    private Duration backoff(int attempts) {
+        // 10 s, 20 s, 40 s ... но не больше maxBackoff
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,95 @@
+package de.ait.training.service;
+
+import de.ait.training.model.EmailOutboxMessage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул потоков, который разбирает email_outbox.
+ * Несколько экземпляров приложения могут работать одновременно - одно и то же письмо
+ * двум потокам не достанется (см. EmailOutboxService.claimBatch).
+ * Если экземпляр упал после отправки, но до markSent, письмо уйдет еще раз после окончания аренды:
+ * доставка "хотя бы один раз", повтор можно узнать по тому же Message-ID
+ */
+@Slf4j
+@Component
+public class EmailOutboxWorker {
+
+    private final EmailOutboxService outboxService;
+    private final EmailService emailService;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMs;
+
+    private final ScheduledExecutorService executor;
+
+    public EmailOutboxWorker(
+            EmailOutboxService outboxService,
+            EmailService emailService,
+            @Value("${app.mail.outbox.workers:2}") int workers,
+            @Value("${app.mail.outbox.batch-size:20}") int batchSize,
+            @Value("${app.mail.outbox.poll-interval-ms:1000}") long pollIntervalMs
+    ) {
+        this.outboxService = outboxService;
+        this.emailService = emailService;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.executor = Executors.newScheduledThreadPool(workers);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            executor.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        log.info("Email outbox started with {} workers", workers);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Отправляет письма пачками, пока очередь не опустеет
+     */
+    void drain() {
+        try {
+            List<EmailOutboxMessage> batch;
+            do {
+                batch = outboxService.claimBatch(batchSize);
+                for (EmailOutboxMessage message : batch) {
+                    send(message);
+                }
+            } while (batch.size() == batchSize && !executor.isShutdown());
+        } catch (Exception e) {
+            // исключение нельзя выпускать, иначе scheduleWithFixedDelay перестанет запускать задачу
+            log.error("Email outbox polling failed", e);
+        }
+    }
+
+    private void send(EmailOutboxMessage message) {
+        // аренда выдана на всю пачку при claimBatch, перед каждым письмом она продлевается:
+        // иначе последние письма большой пачки могли бы уйти уже после ее окончания
+        if (!outboxService.extendLease(message)) {
+            return;
+        }
+        try {
+            emailService.deliver(message.getRecipient(), message.getSubject(), message.getTemplate(),
+                    outboxService.readVariables(message), outboxService.messageId(message));
+            outboxService.markSent(message);
+        } catch (Exception e) {
+            outboxService.markFailed(message, e);
+        }
+    }
+}
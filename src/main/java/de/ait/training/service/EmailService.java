@@ -1,6 +1,7 @@
 package de.ait.training.service;
 
 import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +21,7 @@ import java.util.Map;
 public class EmailService {
     private final JavaMailSender mailSender;
     private final TemplateEngine templateEngine;
+    private final EmailOutboxService outboxService;
 
     @Value("${app.mail.from.address}")
     private String fromAddress;
@@ -27,32 +29,58 @@ public class EmailService {
     @Value("${app.mail.from.personal}")
     private String fromName;
 
+    /**
+     * Ставит письмо в очередь email_outbox и сразу возвращается,
+     * отправкой занимается EmailOutboxWorker
+     */
     public void sendTemplateEmail(String to, String subject,
                                   String template, Map<String, Object> variables) {
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                    StandardCharsets.UTF_8.name());
-
-            helper.setFrom(fromAddress);
-            helper.setTo(to);
-            helper.setSubject(subject);
-
-            Context context = new Context();
-            context.setVariables(variables);
-
-            String html = templateEngine.process(template,context);
-            helper.setText(html, true);
-
-            mailSender.send(mimeMessage);
-
-            log.info("Email sent to () with subject{}", to, subject);
-        } catch (MessagingException exception) {
-            log.error(exception.getMessage(), exception);
-            throw new RuntimeException("Email sending failed" + exception);
-        } catch (Exception exception) {
-            log.error(exception.getMessage(), exception);
-            throw new RuntimeException("Unexpected error" + exception);
+        outboxService.enqueue(to, subject, template, variables);
+    }
+
+    /**
+     * Непосредственная отправка письма через SMTP, вызывается из EmailOutboxWorker
+     *
+     * @param messageId локальная часть Message-ID: при повторной отправке того же письма
+     *                  заголовок совпадает, и почтовые сервисы получателя могут отбросить дубликат
+     */
+    public void deliver(String to, String subject, String template, Map<String, Object> variables,
+                        String messageId) throws MessagingException {
+        MimeMessage mimeMessage = new FixedIdMimeMessage(mailSender.createMimeMessage().getSession(),
+                "<" + messageId + "@" + fromAddress.substring(fromAddress.indexOf('@') + 1) + ">");
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
+                StandardCharsets.UTF_8.name());
+
+        helper.setFrom(fromAddress);
+        helper.setTo(to);
+        helper.setSubject(subject);
+
+        Context context = new Context();
+        context.setVariables(variables);
+
+        String html = templateEngine.process(template,context);
+        helper.setText(html, true);
+
+        mailSender.send(mimeMessage);
+
+        log.info("Email sent to {} with subject {}", to, subject);
+    }
+
+    /**
+     * MimeMessage.saveChanges() каждый раз генерирует новый Message-ID, здесь он задан заранее
+     */
+    private static class FixedIdMimeMessage extends MimeMessage {
+
+        private final String messageId;
+
+        FixedIdMimeMessage(Session session, String messageId) {
+            super(session);
+            this.messageId = messageId;
+        }
+
+        @Override
+        protected void updateMessageID() throws MessagingException {
+            setHeader("Message-ID", messageId);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.ImageUploadStatusDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загрузка картинок по частям с возможностью докачки.
+ * <p>
+ * Клиент создает сессию с размером файла и присылает части с указанием смещения (offset),
+ * в любом порядке и параллельно. Каждая часть пишется в общий временный файл
+ * позиционной записью FileChannel. Когда получены все байты, файл атомарно переносится
+ * в upload.dir и привязывается к автомобилю через CarService.attachImageFile.
+ * Сессии хранятся в памяти, заброшенные удаляются через upload.resumable.session-ttl-minutes.
+ */
+@Slf4j
+@Service
+public class ImageUploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CarService carService;
+    private final Path tempDir;
+    private final long maxFileSize;
+    private final long sessionTtlMs;
+
+    private final Map<String, ImageUploadSession> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+
+    public ImageUploadService(
+            CarService carService,
+            @Value("${upload.resumable.tmp-dir:./img/.uploads}") String tempDirName,
+            @Value("${upload.resumable.max-file-size:524288000}") long maxFileSize,
+            @Value("${upload.resumable.session-ttl-minutes:60}") long sessionTtlMinutes
+    ) throws IOException {
+        this.carService = carService;
+        this.tempDir = Path.of(tempDirName);
+        this.maxFileSize = maxFileSize;
+        this.sessionTtlMs = TimeUnit.MINUTES.toMillis(sessionTtlMinutes);
+
+        Files.createDirectories(tempDir);
+        // сессии живут только в памяти, файлы от прошлого запуска уже никому не нужны
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(tempDir)) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        cleaner.scheduleWithFixedDelay(this::removeExpiredSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public ImageUploadStatusDto createSession(Long carId, String fileName, long size) {
+        if (size <= 0 || size > maxFileSize) {
+            throw new IllegalArgumentException("File size must be between 1 and " + maxFileSize + " bytes");
+        }
+        String safeFileName = StringUtils.getFilename(StringUtils.cleanPath(fileName));
+        if (!StringUtils.hasText(safeFileName)) {
+            throw new IllegalArgumentException("File name must not be empty");
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path tempFile = tempDir.resolve(id + ".part");
+        try {
+            FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            ImageUploadSession session = new ImageUploadSession(id, carId, safeFileName, size, tempFile, channel);
+            sessions.put(id, session);
+            log.info("Upload {} started for car {}: {} ({} bytes)", id, carId, safeFileName, size);
+            return session.toDto();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return состояние загрузки или null, если сессии нет (завершена, удалена или не существовала)
+     */
+    public ImageUploadStatusDto getStatus(Long carId, String uploadId) {
+        ImageUploadSession session = find(carId, uploadId);
+        return session == null ? null : session.toDto();
+    }
+
+    /**
+     * Пишет часть файла, начиная с offset. Тело читается потоком, целиком в память не загружается.
+     * Если после этой части файл получен целиком, ответ возвращается только после его фиксации
+     * и содержит url картинки, в том числе у частей, которые пришли параллельно с последней
+     *
+     * @return состояние загрузки или null, если сессии нет
+     */
+    public ImageUploadStatusDto writeChunk(Long carId, String uploadId, long offset, InputStream body) throws IOException {
+        ImageUploadSession session = find(carId, uploadId);
+        if (session == null) {
+            return null;
+        }
+        if (offset < 0 || offset >= session.getSize()) {
+            throw new IllegalArgumentException("Offset must be between 0 and " + (session.getSize() - 1));
+        }
+        if (!session.beginWrite()) {
+            // файл уже фиксируется или сессия удалена
+            return awaitCommit(session);
+        }
+        session.touch();
+
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = offset;
+        boolean complete;
+        try {
+            int read;
+            while ((read = body.read(bytes)) != -1) {
+                if (position + read > session.getSize()) {
+                    throw new IllegalArgumentException("Chunk exceeds declared file size " + session.getSize());
+                }
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    position += session.getChannel().write(buffer, position);
+                }
+            }
+        } finally {
+            // при обрыве соединения уже записанные байты тоже засчитываются, докачка начнется с position
+            complete = session.addRange(offset, position);
+            session.endWrite();
+            session.touch();
+            if (complete && session.close()) {
+                commit(session);
+            }
+        }
+        return complete ? awaitCommit(session) : session.toDto();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cleaner.shutdownNow();
+        sessions.values().removeIf(session -> {
+            if (session.close()) {
+                discard(session);
+            }
+            return true;
+        });
+    }
+
+    private ImageUploadSession find(Long carId, String uploadId) {
+        ImageUploadSession session = sessions.get(uploadId);
+        return session != null && session.getCarId().equals(carId) ? session : null;
+    }
+
+    /**
+     * Сессия уже закрыта этим потоком (session.close), в канал больше никто не пишет
+     */
+    private void commit(ImageUploadSession session) throws IOException {
+        try {
+            session.getChannel().force(false);
+            session.getChannel().close();
+            String imageUrl = carService.attachImageFile(session.getCarId(), session.getTempFile(), session.getFileName());
+            session.committed(imageUrl);
+            log.info("Upload {} completed, car {} image is {}", session.getId(), session.getCarId(), imageUrl);
+        } catch (IOException | RuntimeException e) {
+            session.commitFailed(e);
+            throw e;
+        } finally {
+            sessions.remove(session.getId());
+            Files.deleteIfExists(session.getTempFile());
+        }
+    }
+
+    private ImageUploadStatusDto awaitCommit(ImageUploadSession session) throws IOException {
+        return session.awaitImageUrl() == null ? null : session.toDto();
+    }
+
+    void removeExpiredSessions() {
+        long expiredBefore = System.currentTimeMillis() - sessionTtlMs;
+        sessions.values().removeIf(session -> {
+            // сессию, в которую сейчас пишут или файл которой фиксируется, не трогаем
+            if (session.getLastActivity() >= expiredBefore || !session.tryClose()) {
+                return false;
+            }
+            log.info("Upload {} for car {} abandoned, removing", session.getId(), session.getCarId());
+            discard(session);
+            return true;
+        });
+    }
+
+    /**
+     * Сессия уже закрыта этим потоком
+     */
+    private void discard(ImageUploadSession session) {
+        session.discarded();
+        try {
+            session.getChannel().close();
+            Files.deleteIfExists(session.getTempFile());
+        } catch (IOException e) {
+            log.warn("Can not delete upload file {}", session.getTempFile(), e);
+        }
+    }
+}
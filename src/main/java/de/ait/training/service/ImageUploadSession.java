@@ -0,0 +1,217 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.ImageUploadStatusDto;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Одна незавершенная загрузка. Части пишутся в общий FileChannel по своим смещениям
+ * параллельно, каждая под общей (read) блокировкой сессии, учет полученных диапазонов - под монитором.
+ * <p>
+ * Закрыть сессию (для фиксации файла или удаления) можно только под исключительной (write) блокировкой:
+ * она дожидается всех пишущих потоков, а после закрытия новые части в канал уже не пишутся.
+ */
+class ImageUploadSession {
+
+    private final String id;
+    private final Long carId;
+    private final String fileName;
+    private final long size;
+    private final Path tempFile;
+    private final FileChannel channel;
+
+    // начало -> конец уже записанных непересекающихся диапазонов
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long received;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock
+    private boolean closed;
+    // url картинки после фиксации, null - сессия удалена без фиксации
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile String imageUrl;
+
+    ImageUploadSession(String id, Long carId, String fileName, long size, Path tempFile, FileChannel channel) {
+        this.id = id;
+        this.carId = carId;
+        this.fileName = fileName;
+        this.size = size;
+        this.tempFile = tempFile;
+        this.channel = channel;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Long getCarId() {
+        return carId;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    Path getTempFile() {
+        return tempFile;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Начинает запись части в канал
+     *
+     * @return false, если сессия уже закрыта и писать в канал нельзя
+     */
+    boolean beginWrite() {
+        lock.readLock().lock();
+        if (closed) {
+            lock.readLock().unlock();
+            return false;
+        }
+        return true;
+    }
+
+    void endWrite() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Закрывает сессию, дожидаясь пишущих потоков. Закрыть сессию (для фиксации файла или удаления)
+     * может только один поток. Вызывать вне записи (после endWrite), иначе поток ждет сам себя
+     *
+     * @return false, если сессия уже закрыта
+     */
+    boolean close() {
+        lock.writeLock().lock();
+        try {
+            return markClosed();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Как close, но не ждет: false, если в сессию сейчас кто-то пишет или она уже закрыта
+     */
+    boolean tryClose() {
+        if (!lock.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            return markClosed();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean markClosed() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    void committed(String imageUrl) {
+        this.imageUrl = imageUrl;
+        result.complete(imageUrl);
+    }
+
+    void commitFailed(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    void discarded() {
+        result.complete(null);
+    }
+
+    /**
+     * Ждет окончания фиксации файла
+     *
+     * @return url картинки или null, если сессия удалена без фиксации
+     */
+    String awaitImageUrl() throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for upload " + id);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Отмечает диапазон [from, to) как записанный
+     *
+     * @return true, если после этого файл получен целиком
+     */
+    synchronized boolean addRange(long from, long to) {
+        if (from >= to) {
+            return received == size;
+        }
+        Map.Entry<Long, Long> previous = ranges.floorEntry(from);
+        if (previous != null && previous.getValue() >= from) {
+            from = previous.getKey();
+            to = Math.max(to, previous.getValue());
+            received -= previous.getValue() - previous.getKey();
+            ranges.remove(previous.getKey());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(from);
+        while (next != null && next.getKey() <= to) {
+            to = Math.max(to, next.getValue());
+            received -= next.getValue() - next.getKey();
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(from);
+        }
+        ranges.put(from, to);
+        received += to - from;
+        return received == size;
+    }
+
+    synchronized ImageUploadStatusDto toDto() {
+        List<long[]> missing = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new long[]{position, range.getKey()});
+            }
+            position = range.getValue();
+        }
+        if (position < size) {
+            missing.add(new long[]{position, size});
+        }
+        return new ImageUploadStatusDto(id, carId, fileName, size, received, missing, imageUrl != null, imageUrl);
+    }
+}
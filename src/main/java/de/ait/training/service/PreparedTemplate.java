@@ -0,0 +1,96 @@
+package de.ait.training.service;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Шаблон письма, уже обработанный Thymeleaf один раз для всей рассылки.
+ * На месте персональных переменных в тексте стоят маркеры, для каждого получателя
+ * остается только склеить готовые куски с его значениями. Если у получателя нет своего значения,
+ * подставляется общее значение рассылки с тем же именем.
+ * <p>
+ * Если шаблон изменил маркер (например, #strings.toUpperCase или URL-кодирование в th:href),
+ * подставить значение уже нельзя, и шаблон отклоняется, а не рассылается с маркером в тексте.
+ */
+class PreparedTemplate {
+
+    // маркер в любом регистре, в том числе URL-кодированный (@ -> %40)
+    private static final Pattern CHANGED_MARKER = Pattern.compile("(?:@@|%40%40)([^@%\\s<>\"']+?)(?:@@|%40%40)");
+
+    private final List<String> literals = new ArrayList<>();
+    private final List<String> variables = new ArrayList<>();
+    private final Map<String, String> defaults;
+    private final int estimatedLength;
+
+    static String marker(String variable) {
+        return "@@" + variable + "@@";
+    }
+
+    PreparedTemplate(String rendered, Set<String> variableNames, Map<String, String> defaults) {
+        this.defaults = defaults;
+        int position = 0;
+        while (true) {
+            int next = -1;
+            String nextVariable = null;
+            for (String name : variableNames) {
+                int index = rendered.indexOf(marker(name), position);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    nextVariable = name;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            literals.add(rendered.substring(position, next));
+            variables.add(nextVariable);
+            position = next + marker(nextVariable).length();
+        }
+        literals.add(rendered.substring(position));
+        checkNoChangedMarkers(variableNames);
+        this.estimatedLength = rendered.length() + 32 * variables.size();
+    }
+
+    /**
+     * Все точные маркеры уже вырезаны, в тексте могли остаться только измененные шаблоном
+     *
+     * @throws IllegalArgumentException если такой маркер есть
+     */
+    private void checkNoChangedMarkers(Set<String> variableNames) {
+        for (String literal : literals) {
+            Matcher matcher = CHANGED_MARKER.matcher(literal);
+            while (matcher.find()) {
+                String found = matcher.group(1);
+                for (String name : variableNames) {
+                    if (name.equalsIgnoreCase(found)) {
+                        throw new IllegalArgumentException("Template changes personal variable '" + name
+                                + "' (" + matcher.group() + "), it can not be substituted per recipient");
+                    }
+                }
+            }
+        }
+    }
+
+    String render(Map<String, String> values) {
+        StringBuilder html = new StringBuilder(estimatedLength);
+        for (int i = 0; i < variables.size(); i++) {
+            html.append(literals.get(i));
+            String value = values.get(variables.get(i));
+            if (value == null) {
+                value = defaults.get(variables.get(i));
+            }
+            if (value != null) {
+                // th:text экранирует HTML, делаем то же самое
+                html.append(HtmlUtils.htmlEscape(value));
+            }
+        }
+        html.append(literals.get(literals.size() - 1));
+        return html.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsDeletedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных запросов (single-flight).
+ * <p>
+ * Первый запрос с данным ключом выполняет загрузку, все остальные, пришедшие пока она идет,
+ * ждут и получают тот же результат. После завершения ключ удаляется, следующий запрос
+ * снова идет в базу - это не кэш. ConcurrentHashMap блокирует только свою корзину,
+ * поэтому запросы с разными ключами друг другу не мешают.
+ * <p>
+ * Запрос не присоединяется к загрузке, начатой до последней закоммиченной записи: иначе клиент,
+ * уже получивший ответ на свою запись, мог бы прочитать данные без нее. Для этого каждое изменение
+ * автомобилей увеличивает номер поколения (generation), и присоединиться можно только к загрузке
+ * текущего поколения. Событие приходит после коммита, но до ответа на запрос записи.
+ * <p>
+ * cars.coalescing.enabled=false выключает объединение: каждый запрос идет в базу (например, для замеров).
+ */
+@Slf4j
+@Component
+public class QueryCoalescer {
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final boolean enabled;
+
+    public QueryCoalescer(@Value("${cars.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        if (!enabled) {
+            executed.increment();
+            return loader.get();
+        }
+        long current = generation.get();
+        Flight own = new Flight(current, new CompletableFuture<>());
+        // загрузка прошлого поколения заменяется новой, ее собственные ожидающие дождутся ее как обычно
+        Flight flight = inFlight.compute(key,
+                (k, existing) -> existing != null && existing.generation() >= current ? existing : own);
+
+        if (flight != own) {
+            coalesced.increment();
+            log.debug("Request {} joined in-flight query", key);
+            try {
+                return (T) flight.result().join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        executed.increment();
+        try {
+            T result = loader.get();
+            own.result().complete(result);
+            return result;
+        } catch (Throwable e) {
+            // и при Error (OutOfMemoryError, StackOverflowError) ждущие запросы должны проснуться
+            own.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarChanged(CarChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCarsDeleted(CarsDeletedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return сколько запросов реально выполнено и сколько присоединилось к уже идущим
+     */
+    public Map<String, Long> getStats() {
+        return Map.of(
+                "executed", executed.sum(),
+                "coalesced", coalesced.sum(),
+                "inFlight", (long) inFlight.size()
+        );
+    }
+
+    /**
+     * @param generation поколение данных на момент начала загрузки
+     */
+    private record Flight(long generation, CompletableFuture<Object> result) {
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+}
@@ -0,0 +1,29 @@
+package de.ait.training;
+
+import de.ait.training.model.Car;
+
+/**
+ * Автомобили для тестов: сущность Car с уже заданным id, как после сохранения в базу
+ */
+public final class CarFixtures {
+
+    private CarFixtures() {
+    }
+
+    public static Car car(long id, String color, String model, double price) {
+        Car car = new Car(color, model, price);
+        car.setId(id);
+        return car;
+    }
+
+    /**
+     * Со всеми полями, год выпуска 2021
+     */
+    public static Car car(long id, String color, String model, double price, String engineType, String imageUrl) {
+        Car car = car(id, color, model, price);
+        car.setYear(2021);
+        car.setEngineType(engineType);
+        car.setImageUrl(imageUrl);
+        return car;
+    }
+}
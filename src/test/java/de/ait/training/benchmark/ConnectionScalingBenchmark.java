@@ -0,0 +1,146 @@
+package de.ait.training.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сравнение MVC (Tomcat + JPA) и реактивного варианта API чтения (Netty + R2DBC, профиль reactive)
+ * при большом числе одновременных соединений. Каждое соединение - отдельный клиент, который
+ * в цикле шлет запрос и ждет ответ (закрытая модель), поэтому на сервере одновременно
+ * висит столько запросов, сколько соединений.
+ * <p>
+ * Чтобы сравнение памяти было честным, каждый вариант меряется на свежем запуске приложения.
+ * Реактивный вариант каждый раз читает базу, поэтому у MVC выключены снимок каталога
+ * и объединение запросов: иначе MVC отвечает из памяти или одним запросом на всех, и сравниваются
+ * не Tomcat + JPA с Netty + R2DBC, а кэш с базой.
+ * <pre>
+ * ulimit -n 65536
+ * # MVC: Tomcat по умолчанию принимает 8192 соединения и обрабатывает 200 запросов одновременно
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev \
+ *     -Dspring-boot.run.arguments="--server.port=8080 --server.tomcat.max-connections=20000 \
+ *     --cars.snapshot.enabled=false --cars.coalescing.enabled=false"
+ * java -cp target/test-classes:$HDR_HISTOGRAM_JAR de.ait.training.benchmark.ConnectionScalingBenchmark \
+ *      http://localhost:8080/api/cars/color/black 10000 60 $(pgrep -f DevelopmentGr54FsApplication)
+ *
+ * # реактивный вариант на том же приложении, порт cars.reactive.port
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev,reactive
+ * java -cp ... ConnectionScalingBenchmark http://localhost:8081/api/cars/color/black 10000 60 $(pgrep -f ...)
+ *
+ * # для сравнения: MVC на виртуальных потоках
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev \
+ *     -Dspring-boot.run.arguments="--spring.threads.virtual.enabled=true --server.tomcat.max-connections=20000 \
+ *     --cars.snapshot.enabled=false --cars.coalescing.enabled=false"
+ * </pre>
+ * Аргументы: адрес, число соединений, длительность замера в секундах, pid приложения (необязательно).
+ * Печатаются req/s, задержки p50/p99/p99.9, ошибки и, если задан pid, максимум потоков
+ * и резидентной памяти (VmRSS) процесса приложения за время замера (Linux, /proc/pid/status).
+ */
+public class ConnectionScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(args.length > 0 ? args[0] : "http://localhost:8081/api/cars/color/black");
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        Long pid = args.length > 3 ? Long.valueOf(args[3]) : null;
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+
+        // прогрев: JIT, пулы соединений к базе, все соединения клиента открыты
+        run(httpClient, request, connections, 10, null);
+
+        ProcessStats processStats = new ProcessStats();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        if (pid != null) {
+            sampler.scheduleAtFixedRate(() -> processStats.sample(pid), 0, 500, TimeUnit.MILLISECONDS);
+        }
+        Recorder recorder = new Recorder(3);
+        LongAdder[] result = run(httpClient, request, connections, seconds, recorder);
+        sampler.shutdownNow();
+
+        Histogram latency = recorder.getIntervalHistogram();
+        System.out.printf("%s: %d connections, %d s%n", uri, connections, seconds);
+        System.out.printf("throughput %.0f req/s, errors %d%n", (double) result[0].sum() / seconds, result[1].sum());
+        System.out.printf("latency ms: p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+        if (pid != null) {
+            System.out.printf("server: max threads %d, max RSS %d MB%n",
+                    processStats.maxThreads.get(), processStats.maxRssKb.get() / 1024);
+        }
+    }
+
+    private static LongAdder[] run(HttpClient httpClient, HttpRequest request, int connections, int seconds,
+                                   Recorder recorder) {
+        LongAdder ok = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                executor.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() < 500) {
+                                ok.increment();
+                            } else {
+                                errors.increment();
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                        if (recorder != null) {
+                            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        }
+                    }
+                });
+            }
+        }
+        return new LongAdder[]{ok, errors};
+    }
+
+    private static final class ProcessStats {
+        private final AtomicLong maxThreads = new AtomicLong();
+        private final AtomicLong maxRssKb = new AtomicLong();
+
+        private void sample(long pid) {
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                    if (line.startsWith("Threads:")) {
+                        maxThreads.accumulateAndGet(parse(line), Math::max);
+                    } else if (line.startsWith("VmRSS:")) {
+                        maxRssKb.accumulateAndGet(parse(line), Math::max);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Can not read process stats: " + e.getMessage());
+            }
+        }
+
+        private static long parse(String line) {
+            return Long.parseLong(line.replaceAll("\\D+", ""));
+        }
+    }
+}
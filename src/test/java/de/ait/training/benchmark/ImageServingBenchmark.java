@@ -0,0 +1,181 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.service.CarImageStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Раздача картинок, две части меряются отдельно.
+ * <p>
+ * cache - CarImageStore.find в самом процессе, без HTTP: сколько попаданий в кэш в секунду
+ * выдерживают N потоков одновременно, по сравнению с чтением тех же файлов с диска
+ * (кэш выключен, image.cache.max-size = 0). Так видно, упирается ли горячий путь в блокировки кэша.
+ * <pre>
+ * java -cp target/classes:target/test-classes:$CAFFEINE_JAR de.ait.training.benchmark.ImageServingBenchmark \
+ *      cache 200 16 10
+ * </pre>
+ * Аргументы: число файлов по 50 КБ, потоков, секунд на режим.
+ * <p>
+ * sendfile - большой файл (больше image.cache.max-file-size, в кэш не попадает) через работающее
+ * приложение: CarImageController (FileSystemResource, Tomcat отдает его через sendfile)
+ * против общего обработчика статики. Тело ответа клиент не копирует, а только считает байты,
+ * поэтому предел задает сервер, а не клиент.
+ * <pre>
+ * java -cp target/test-classes de.ait.training.benchmark.ImageServingBenchmark \
+ *      sendfile http://localhost:8080 big-photo.jpg 32 20
+ * </pre>
+ * Аргументы: адрес приложения, имя большого файла из upload.dir, параллельных клиентов, секунд на режим.
+ */
+public class ImageServingBenchmark {
+
+    private static final int CACHED_FILE_SIZE = 50 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "cache";
+        if ("cache".equals(mode)) {
+            benchmarkCache(args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 16,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 10);
+        } else if ("sendfile".equals(mode)) {
+            benchmarkSendfile(args.length > 1 ? args[1] : "http://localhost:8080",
+                    args.length > 2 ? args[2] : "big-photo.jpg",
+                    args.length > 3 ? Integer.parseInt(args[3]) : 32,
+                    args.length > 4 ? Integer.parseInt(args[4]) : 20);
+        } else {
+            throw new IllegalArgumentException("Mode must be cache or sendfile");
+        }
+    }
+
+    private static void benchmarkCache(int files, int threads, int seconds) throws Exception {
+        Path dir = Files.createTempDirectory("image-benchmark");
+        byte[] content = new byte[CACHED_FILE_SIZE];
+        new Random(42).nextBytes(content);
+        String[] names = new String[files];
+        for (int i = 0; i < files; i++) {
+            names[i] = i + ".jpg";
+            Files.write(dir.resolve(names[i]), content);
+        }
+
+        CarImageStore cached = new CarImageStore(dir.toString(), CACHED_FILE_SIZE, (long) files * CACHED_FILE_SIZE);
+        CarImageStore uncached = new CarImageStore(dir.toString(), CACHED_FILE_SIZE, 0);
+        // прогрев JIT, все файлы попадают в кэш
+        runLookups(cached, names, threads, 3);
+        runLookups(uncached, names, threads, 3);
+
+        System.out.printf("%d files of %d KB, %d threads, %d s%n", files, CACHED_FILE_SIZE / 1024, threads, seconds);
+        System.out.printf("%-16s %14s%n", "store", "lookups/s");
+        long hits = runLookups(cached, names, threads, seconds);
+        long reads = runLookups(uncached, names, threads, seconds);
+        System.out.printf("%-16s %14.0f%n", "cache hit", (double) hits / seconds);
+        System.out.printf("%-16s %14.0f%n", "disk", (double) reads / seconds);
+
+        try (var leftovers = Files.list(dir)) {
+            for (Path file : leftovers.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static long runLookups(CarImageStore store, String[] names, int threads, int seconds) {
+        LongAdder lookups = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            if (store.find(names[random.nextInt(names.length)]) != null) {
+                                lookups.increment();
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+            }
+        }
+        return lookups.sum();
+    }
+
+    private static void benchmarkSendfile(String baseUrl, String fileName, int clients, int seconds)
+            throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI controller = URI.create(baseUrl + "/images/" + fileName);
+        URI staticHandler = URI.create(baseUrl + "/" + fileName);
+
+        // прогрев JIT и страничного кэша ОС
+        download(httpClient, controller, clients, 5);
+        download(httpClient, staticHandler, clients, 5);
+
+        Transfer imageController = download(httpClient, controller, clients, seconds);
+        Transfer staticResources = download(httpClient, staticHandler, clients, seconds);
+
+        System.out.printf("%s, %d clients, %d s%n", fileName, clients, seconds);
+        System.out.printf("%-22s %10s %10s %8s%n", "handler", "req/s", "MB/s", "errors");
+        print("CarImageController", imageController, seconds);
+        print("static resources", staticResources, seconds);
+    }
+
+    private static Transfer download(HttpClient httpClient, URI uri, int clients, int seconds) {
+        LongAdder requests = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    byte[] buffer = new byte[64 * 1024];
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            HttpResponse<InputStream> response =
+                                    httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                            try (InputStream body = response.body()) {
+                                long received = 0;
+                                int read;
+                                while ((read = body.read(buffer)) != -1) {
+                                    received += read;
+                                }
+                                if (response.statusCode() == 200) {
+                                    requests.increment();
+                                    bytes.add(received);
+                                } else {
+                                    errors.increment();
+                                }
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                    }
+                });
+            }
+        }
+        return new Transfer(requests.sum(), bytes.sum(), errors.sum());
+    }
+
+    private static void print(String name, Transfer transfer, int seconds) {
+        System.out.printf("%-22s %10.0f %10.1f %8d%n", name,
+                (double) transfer.requests() / seconds,
+                transfer.bytes() / 1024.0 / 1024.0 / seconds,
+                transfer.errors());
+    }
+
+    private record Transfer(long requests, long bytes, long errors) {
+    }
+}
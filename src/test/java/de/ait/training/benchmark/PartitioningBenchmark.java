@@ -0,0 +1,202 @@
+package de.ait.training.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Сравнение секционированной (как cars после db.changelog-7.0) и обычной таблицы на большом объеме.
+ * Обе таблицы создаются в отдельной базе, заполняются одинаковыми данными через generate_series,
+ * затем для каждой замеряются запросы CarRepository, VACUUM после массового обновления и размер индексов:
+ * <pre>
+ * createdb cars_bench
+ * java -cp target/test-classes:$POSTGRES_JDBC_JAR \
+ *      de.ait.training.benchmark.PartitioningBenchmark jdbc:postgresql://localhost:5432/cars_bench postgres secret 100000000
+ * </pre>
+ * Аргументы: адрес базы, пользователь, пароль, число строк (по умолчанию 10 000 000),
+ * размер секции в id (по умолчанию 10 000 000, как в миграции).
+ * Для каждого запроса печатается среднее время и число секций в плане (EXPLAIN).
+ */
+public class PartitioningBenchmark {
+
+    private static final int ITERATIONS = 200;
+    private static final String[] COLORS = {"black", "white", "red", "green", "blue", "silver", "grey", "yellow"};
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "jdbc:postgresql://localhost:5432/cars_bench";
+        String user = args.length > 1 ? args[1] : "postgres";
+        String password = args.length > 2 ? args[2] : System.getenv("DB_PASSWORD");
+        long rows = args.length > 3 ? Long.parseLong(args[3]) : 10_000_000L;
+        long partitionSize = args.length > 4 ? Long.parseLong(args[4]) : 10_000_000L;
+
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            createTables(connection, rows, partitionSize);
+            System.out.printf("%d rows, partition size %d%n", rows, partitionSize);
+            System.out.printf("%-28s %14s %14s %12s%n", "query", "plain ms", "partitioned ms", "partitions");
+            for (BenchQuery query : queries(rows)) {
+                run(connection, query);
+            }
+            vacuum(connection, rows);
+            indexSize(connection);
+        }
+    }
+
+    private static BenchQuery[] queries(long rows) {
+        return new BenchQuery[]{
+                new BenchQuery("findById", "SELECT * FROM %s WHERE id = ?", random -> new Object[]{id(random, rows)}),
+                new BenchQuery("id list (100 ids)", "SELECT id, image_url FROM %s WHERE id = ANY (?)", null),
+                new BenchQuery("findByIdBetween (10k)", "SELECT * FROM %s WHERE id BETWEEN ? AND ?", random -> {
+                    long from = id(random, rows - 10_000);
+                    return new Object[]{from, from + 9_999};
+                }),
+                new BenchQuery("keyset by price (1k)",
+                        "SELECT id, image_url FROM %s WHERE price BETWEEN ? AND ? AND id > ? ORDER BY id LIMIT 1000",
+                        random -> new Object[]{10_000, 12_000, id(random, rows)}),
+                new BenchQuery("price between (narrow)", "SELECT * FROM %s WHERE price BETWEEN ? AND ?", random -> {
+                    int min = 5_000 + random.nextInt(200) * 1_000;
+                    return new Object[]{min, min + 1};
+                }),
+                new BenchQuery("color (upper, limit 100)",
+                        "SELECT * FROM %s WHERE upper(color) = upper(?) LIMIT 100",
+                        random -> new Object[]{COLORS[random.nextInt(COLORS.length)]}),
+        };
+    }
+
+    private static long id(Random random, long rows) {
+        return 1 + (long) (random.nextDouble() * rows);
+    }
+
+    private static void createTables(Connection connection, long rows, long partitionSize) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_cars_plain, bench_cars_part");
+            String columns = "(id BIGINT NOT NULL, model VARCHAR(255) NOT NULL, color VARCHAR(255) NOT NULL, "
+                    + "price NUMERIC(12, 2) NOT NULL, year INT, engine_type VARCHAR(64), image_url VARCHAR(256), "
+                    + "PRIMARY KEY (id))";
+            statement.execute("CREATE TABLE bench_cars_plain " + columns);
+            statement.execute("CREATE TABLE bench_cars_part " + columns + " PARTITION BY RANGE (id)");
+            for (long from = 0; from <= rows; from += partitionSize) {
+                statement.execute(String.format("CREATE TABLE bench_cars_part_%d PARTITION OF bench_cars_part "
+                        + "FOR VALUES FROM (%d) TO (%d)", from / partitionSize, from, from + partitionSize));
+            }
+
+            String fill = "INSERT INTO %s SELECT g, 'model ' || (g %% 50), "
+                    + "(ARRAY['black','white','red','green','blue','silver','grey','yellow'])[1 + g %% 8], "
+                    + "5000 + (g * 7919 %% 200) * 1000, 2000 + g %% 26, "
+                    + "CASE WHEN g %% 2 = 0 THEN 'petrol' ELSE 'diesel' END, "
+                    + "'http://localhost:8080/images/' || g || '.jpg' FROM generate_series(1, " + rows + ") g";
+            for (String table : new String[]{"bench_cars_plain", "bench_cars_part"}) {
+                long start = System.nanoTime();
+                statement.execute(String.format(fill, table));
+                statement.execute("CREATE INDEX ON " + table + " (price)");
+                statement.execute("CREATE INDEX ON " + table + " (upper(color))");
+                statement.execute("VACUUM ANALYZE " + table);
+                System.out.printf("%s filled in %d s%n", table, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private static void run(Connection connection, BenchQuery query) throws SQLException {
+        double plainMs = measure(connection, query, "bench_cars_plain");
+        double partMs = measure(connection, query, "bench_cars_part");
+        System.out.printf("%-28s %14.3f %14.3f %12d%n", query.name(), plainMs, partMs,
+                scannedPartitions(connection, query));
+    }
+
+    private static double measure(Connection connection, BenchQuery query, String table) throws SQLException {
+        Random random = new Random(54);
+        try (PreparedStatement statement = connection.prepareStatement(String.format(query.sql(), table))) {
+            // прогрев: план, кэш страниц
+            for (int i = 0; i < ITERATIONS / 4; i++) {
+                execute(connection, statement, query, random);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                execute(connection, statement, query, random);
+            }
+            return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+        }
+    }
+
+    private static void execute(Connection connection, PreparedStatement statement, BenchQuery query, Random random)
+            throws SQLException {
+        if (query.parameters() == null) {
+            Long[] ids = new Long[100];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = 1 + (long) random.nextInt(1_000_000);
+            }
+            statement.setArray(1, connection.createArrayOf("bigint", ids));
+        } else {
+            Object[] parameters = query.parameters().apply(random);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+        }
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                resultSet.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Сколько секций остается в плане после отсечения при планировании (параметры подставлены константами)
+     */
+    private static long scannedPartitions(Connection connection, BenchQuery query) throws SQLException {
+        Random random = new Random(54);
+        String sql = String.format(query.sql(), "bench_cars_part");
+        if (query.parameters() == null) {
+            sql = sql.replace("ANY (?)", "ANY ('{1,2,3}'::bigint[])");
+        } else {
+            for (Object parameter : query.parameters().apply(random)) {
+                sql = sql.replaceFirst("\\?", parameter instanceof String ? "'" + parameter + "'" : parameter.toString());
+            }
+        }
+        long partitions = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("EXPLAIN " + sql)) {
+            while (plan.next()) {
+                if (plan.getString(1).matches(".*(Seq|Index|Index Only|Bitmap Heap) Scan .*on bench_cars_part_\\d+ .*")) {
+                    partitions++;
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Обновляем 1% самых новых строк и замеряем VACUUM: в секционированной таблице
+     * изменения попадают в последнюю секцию, а VACUUM остальных почти ничего не делает
+     */
+    private static void vacuum(Connection connection, long rows) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"bench_cars_plain", "bench_cars_part"}) {
+                statement.execute("UPDATE " + table + " SET price = price + 1 WHERE id > " + (rows - rows / 100));
+                long start = System.nanoTime();
+                statement.execute("VACUUM " + table);
+                System.out.printf("VACUUM %-20s %10.1f ms%n", table, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        }
+    }
+
+    private static void indexSize(Connection connection) throws SQLException {
+        String sql = "SELECT pg_size_pretty(sum(pg_indexes_size(relid))) FROM pg_partition_tree(?::regclass)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (String table : new String[]{"bench_cars_plain", "bench_cars_part"}) {
+                statement.setString(1, table);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    System.out.printf("indexes of %-20s %s%n", table, resultSet.getString(1));
+                }
+            }
+        }
+    }
+
+    private record BenchQuery(String name, String sql, Function<Random, Object[]> parameters) {
+    }
+}
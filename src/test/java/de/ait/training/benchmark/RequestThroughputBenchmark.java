@@ -0,0 +1,72 @@
+package de.ait.training.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пропускная способность одного эндпоинта при заданном числе параллельных клиентов.
+ * Используется, чтобы сравнить стоимость логирования: приложение запускается несколько раз
+ * с разными настройками, и для каждого запуска снимается req/s, например:
+ * <pre>
+ * # синхронные аппендеры, как было раньше
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev,sync-logs
+ * # асинхронные аппендеры + сэмплирование INFO-строк контроллеров
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev -Dspring-boot.run.arguments=--logging.sampling.request-rate=100
+ * # логирование приложения выключено
+ * mvn spring-boot:run -Dspring-boot.run.profiles=dev -Dspring-boot.run.arguments=--logging.level.de.ait=OFF
+ *
+ * java -cp target/test-classes de.ait.training.benchmark.RequestThroughputBenchmark \
+ *      http://localhost:8080/api/cars/color/black 64 30
+ * </pre>
+ * Аргументы: адрес, число параллельных клиентов, длительность замера в секундах.
+ */
+public class RequestThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(args.length > 0 ? args[0] : "http://localhost:8080/api/cars/color/black");
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+
+        // прогрев
+        run(httpClient, request, clients, 5);
+
+        LongAdder[] result = run(httpClient, request, clients, seconds);
+        System.out.printf("%s: %.0f req/s, %d errors, %d clients, %d s%n",
+                uri, (double) result[0].sum() / seconds, result[1].sum(), clients, seconds);
+    }
+
+    private static LongAdder[] run(HttpClient httpClient, HttpRequest request, int clients, int seconds) {
+        LongAdder ok = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() < 500) {
+                                ok.increment();
+                            } else {
+                                errors.increment();
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                    }
+                });
+            }
+        }
+        return new LongAdder[]{ok, errors};
+    }
+}
@@ -0,0 +1,58 @@
+package de.ait.training.config;
+
+import de.ait.training.repository.CarRepository;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.jdbc.Sql;
+import reactor.netty.DisposableServer;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Профиль reactive вместе с обычным приложением: JPA получает DataSource,
+ * а реактивный сервер отвечает из базы через свой пул R2DBC
+ */
+@SpringBootTest(properties = "spring.profiles.active=test,reactive")
+class ReactiveCarApiConfigIT {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private DisposableServer reactiveCarServer;
+
+    @Test
+    @DisplayName("context starts with both profiles, DataSource is created, no ConnectionFactory bean")
+    void testContextLoads() {
+        assertThat(context.getBeanNamesForType(DataSource.class)).isNotEmpty();
+        assertThat(context.getBeanNamesForType(ConnectionFactory.class)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("JPA and the reactive API read the same cars")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void testBothApisRead() throws Exception {
+        assertThat(carRepository.findByColorIgnoreCase("black")).hasSize(1);
+
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + reactiveCarServer.port()
+                        + "/api/cars/color/BLACK")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("BMW x5");
+    }
+}
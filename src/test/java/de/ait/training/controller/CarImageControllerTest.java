@@ -0,0 +1,100 @@
+package de.ait.training.controller;
+
+import de.ait.training.service.CarImageStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CarImageControllerTest {
+
+    private static final String FILE_NAME = "3f85a3ce-c899-43bf-aa3f-71bbd3cfd235-bmw.jpg";
+
+    @TempDir
+    Path uploadDir;
+
+    private byte[] image;
+    private CarImageStore imageStore;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        image = new byte[2000];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) i;
+        }
+        Files.write(uploadDir.resolve(FILE_NAME), image);
+        // файлы больше 1000 байт в память не кэшируются
+        imageStore = new CarImageStore(uploadDir.toString(), 1000, 10_000);
+        mockMvc = MockMvcBuilders.standaloneSetup(new CarImageController(imageStore)).build();
+    }
+
+    @Test
+    @DisplayName("image is returned with immutable cache headers and strong ETag, status OK")
+    void shouldReturnImageWithCacheHeaders() throws Exception {
+        MvcResult result = mockMvc.perform(get("/images/{fileName}", FILE_NAME))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().bytes(image))
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader("ETag")).startsWith("\"").doesNotStartWith("W/");
+    }
+
+    @Test
+    @DisplayName("same ETag in If-None-Match, status 304 NOT_MODIFIED without body")
+    void shouldReturnNotModifiedForKnownEtag() throws Exception {
+        String etag = mockMvc.perform(get("/images/{fileName}", FILE_NAME))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/images/{fileName}", FILE_NAME).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @DisplayName("Range request returns only requested bytes, status 206 PARTIAL_CONTENT")
+    void shouldReturnRequestedRange() throws Exception {
+        mockMvc.perform(get("/images/{fileName}", FILE_NAME).header("Range", "bytes=100-199"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 100-199/2000"))
+                .andExpect(header().longValue("Content-Length", 100))
+                .andExpect(content().bytes(Arrays.copyOfRange(image, 100, 200)));
+    }
+
+    @Test
+    @DisplayName("Range outside of the file, status 416")
+    void shouldRejectUnsatisfiableRange() throws Exception {
+        mockMvc.perform(get("/images/{fileName}", FILE_NAME).header("Range", "bytes=5000-6000"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */2000"));
+    }
+
+    @Test
+    @DisplayName("small images are cached in memory, unknown file returns 404 NOT_FOUND")
+    void shouldCacheSmallImages() throws Exception {
+        byte[] small = new byte[500];
+        Files.write(uploadDir.resolve("small.png"), small);
+
+        mockMvc.perform(get("/images/{fileName}", "small.png")).andExpect(status().isOk());
+        mockMvc.perform(get("/images/{fileName}", FILE_NAME)).andExpect(status().isOk());
+        mockMvc.perform(get("/images/{fileName}", "missing.png")).andExpect(status().isNotFound());
+
+        assertThat(imageStore.getCachedFileCount()).isEqualTo(1);
+    }
+}
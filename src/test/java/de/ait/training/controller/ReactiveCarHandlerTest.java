@@ -0,0 +1,97 @@
+package de.ait.training.controller;
+
+import de.ait.training.config.ReactiveCarApiConfig;
+import de.ait.training.model.Car;
+import de.ait.training.repository.ReactiveCarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static de.ait.training.CarFixtures.car;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ReactiveCarHandlerTest {
+
+    private ReactiveCarRepository repository;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ReactiveCarRepository.class);
+        ReactiveCarHandler handler = new ReactiveCarHandler(repository);
+        client = WebTestClient.bindToRouterFunction(new ReactiveCarApiConfig().reactiveCarRoutes(handler)).build();
+    }
+
+    @Test
+    @DisplayName("cars by color are streamed as JSON array, color is normalized, status OK")
+    void shouldStreamCarsByColorAsJsonArray() {
+        when(repository.findByColorIgnoreCase("black"))
+                .thenReturn(Flux.just(car(1L, "black", "BMW x5", 25000), car(2L, "black", "Audi A4", 15000)));
+
+        List<Car> cars = client.get().uri("/api/cars/color/{color}", " Black ")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(Car.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(cars).extracting(Car::getModel).containsExactly("BMW x5", "Audi A4");
+    }
+
+    @Test
+    @DisplayName("Accept application/x-ndjson, one car per line")
+    void shouldStreamNdjsonWhenRequested() {
+        when(repository.findAll())
+                .thenReturn(Flux.just(car(1L, "black", "BMW x5", 25000), car(2L, "red", "Ferrari", 250000)));
+
+        List<Car> cars = client.get().uri("/api/cars")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Car.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(cars).extracting(Car::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("max price less than min, status 400 BAD_REQUEST, database is not queried")
+    void shouldRejectInvalidPriceRange() {
+        client.get().uri("/api/cars/price/between/{min}/{max}", 30000, 10000)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("price is not a number, status 400 BAD_REQUEST")
+    void shouldRejectInvalidPrice() {
+        client.get().uri("/api/cars/price/under/{max}", "cheap")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("no cars in price range, empty array, status OK")
+    void shouldReturnEmptyArrayWhenNothingFound() {
+        when(repository.findByPriceGreaterThanEqual(1_000_000.0)).thenReturn(Flux.empty());
+
+        client.get().uri("/api/cars/price/over/{min}", 1_000_000)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("[]");
+    }
+}
@@ -1,5 +1,6 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.BulkDeleteRequest;
 import de.ait.training.model.Car;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,6 +15,7 @@ import org.springframework.test.context.jdbc.Sql;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -195,4 +197,49 @@ class RestApiCarControllerIT {
         List<Car> cars = Arrays.asList(response.getBody());
         assertThat(cars.isEmpty()).isEqualTo(true);
     }
-}
\ No newline at end of file
+
+    /*Test scenario 6 POST/api/cars/bulk-delete*/
+
+    @Test
+    @DisplayName("bulk delete by color (case insensitive), 1 car deleted, 3 cars left, status OK")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void shouldBulkDeleteCarsByColor() {
+        ResponseEntity<Map> response = restTemplate.postForEntity(url("/api/cars/bulk-delete"),
+                new BulkDeleteRequest(null, "RED", null, null), Map.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(((Number) response.getBody().get("deleted")).longValue()).isEqualTo(1L);
+
+        Car[] cars = restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody();
+        assertThat(cars.length).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("bulk delete by price range and by ids, all 4 cars deleted, status OK")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void shouldBulkDeleteCarsByPriceAndIds() {
+        ResponseEntity<Map> byPrice = restTemplate.postForEntity(url("/api/cars/bulk-delete"),
+                new BulkDeleteRequest(null, null, 15000.0, 25000.0), Map.class);
+        assertThat(((Number) byPrice.getBody().get("deleted")).longValue()).isEqualTo(3L);
+
+        Car[] left = restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody();
+        List<Long> ids = Arrays.stream(left).map(Car::getId).toList();
+        ResponseEntity<Map> byIds = restTemplate.postForEntity(url("/api/cars/bulk-delete"),
+                new BulkDeleteRequest(ids, null, null, null), Map.class);
+        assertThat(((Number) byIds.getBody().get("deleted")).longValue()).isEqualTo(1L);
+
+        Car[] cars = restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody();
+        assertThat(cars.length).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("bulk delete without ids and criteria, nothing deleted, status 400 BadRequest")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void shouldRejectBulkDeleteWithoutCriteria() {
+        ResponseEntity<Map> response = restTemplate.postForEntity(url("/api/cars/bulk-delete"),
+                new BulkDeleteRequest(), Map.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+        Car[] cars = restTemplate.getForEntity(url("/api/cars"), Car[].class).getBody();
+        assertThat(cars.length).isEqualTo(4);
+    }
+}
@@ -0,0 +1,204 @@
+package de.ait.training.loadtest;
+
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Нагрузочный тест API автомобилей. По умолчанию не запускается, только через профиль:
+ * <pre>
+ * mvn -P load-test verify -Dloadtest.rate=300 -Dloadtest.duration=120
+ * </pre>
+ * Приложение поднимается с профилем test (локальный PostgreSQL из application-test.properties),
+ * таблица cars заполняется loadtest.cars автомобилями, затем смесь запросов loadtest.mix
+ * отправляется с фиксированной частотой loadtest.rate запросов в секунду (открытая модель).
+ * <p>
+ * Отчет (p50/p99/p99.9, max, throughput и ошибки по каждому эндпоинту) печатается в консоль
+ * и сохраняется в target/load-test/report.txt, полные распределения - в target/load-test/*.hgrm.
+ * Если задан loadtest.max-p99-ms, тест падает при превышении p99 на любом эндпоинте.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"upload.dir=target/load-test/img", "upload.resumable.tmp-dir=target/load-test/uploads"})
+@ActiveProfiles("test")
+class CarApiLoadTest {
+
+    private static final String[] COLORS = {"black", "white", "red", "green", "blue", "silver", "grey", "yellow"};
+    private static final String[] MODELS = {"BMW x5", "Audi A4", "MB A220", "VW Golf", "Skoda Octavia", "Ferrari"};
+
+    private final double rate = Double.parseDouble(System.getProperty("loadtest.rate", "100"));
+    private final int durationSeconds = Integer.getInteger("loadtest.duration", 60);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup", 15);
+    private final int carCount = Integer.getInteger("loadtest.cars", 10_000);
+    private final long seed = Long.getLong("loadtest.seed", 54L);
+    private final String mix = System.getProperty("loadtest.mix",
+            "getCars:10,color:30,price:30,putCar:15,postCar:10,upload:5");
+    private final String maxP99Ms = System.getProperty("loadtest.max-p99-ms");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    private List<Long> carIds;
+
+    @Test
+    @DisplayName("open-model load with the configured mix, latency percentiles per endpoint")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt"})
+    void runLoad() throws Exception {
+        seedCars();
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        OpenModelLoadGenerator generator = new OpenModelLoadGenerator(httpClient, endpoints(), seed);
+
+        generator.run(rate, warmupSeconds);
+        generator.resetStats();
+        generator.run(rate, durationSeconds);
+
+        String report = report(generator.getStats());
+        System.out.println(report);
+        Path reportDir = Path.of("target", "load-test");
+        Files.createDirectories(reportDir);
+        Files.writeString(reportDir.resolve("report.txt"), report);
+        for (Map.Entry<String, OpenModelLoadGenerator.EndpointStats> entry : generator.getStats().entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reportDir.resolve(entry.getKey() + ".hgrm")))) {
+                entry.getValue().latencyMicros.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        if (maxP99Ms != null) {
+            generator.getStats().forEach((name, stats) ->
+                    assertThat(stats.latencyMicros.getValueAtPercentile(99) / 1000.0)
+                            .as("p99 of %s, ms", name)
+                            .isLessThanOrEqualTo(Double.parseDouble(maxP99Ms)));
+        }
+    }
+
+    private void seedCars() {
+        Random random = new Random(seed);
+        List<Car> cars = new ArrayList<>(carCount);
+        for (int i = 0; i < carCount; i++) {
+            Car car = new Car(COLORS[random.nextInt(COLORS.length)], MODELS[random.nextInt(MODELS.length)],
+                    5000 + random.nextInt(200) * 1000);
+            car.setYear(2000 + random.nextInt(26));
+            car.setEngineType(random.nextBoolean() ? "petrol" : "diesel");
+            cars.add(car);
+        }
+        carIds = carRepository.saveAll(cars).stream().map(Car::getId).toList();
+    }
+
+    private List<OpenModelLoadGenerator.Endpoint> endpoints() {
+        List<OpenModelLoadGenerator.Endpoint> endpoints = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            String name = nameAndWeight[0];
+            int weight = Integer.parseInt(nameAndWeight[1]);
+            Function<Random, HttpRequest> requestFactory = switch (name) {
+                case "getCars" -> random -> get("/api/cars");
+                case "color" -> random -> get("/api/cars/color/" + COLORS[random.nextInt(COLORS.length)]);
+                case "price" -> random -> {
+                    int min = 5000 + random.nextInt(150) * 1000;
+                    return get("/api/cars/price/between/" + min + "/" + (min + 20_000));
+                };
+                case "putCar" -> random -> json("PUT", "/api/cars/" + randomCarId(random), randomCarJson(random));
+                case "postCar" -> random -> json("POST", "/api/cars", randomCarJson(random));
+                case "upload" -> random -> upload(randomCarId(random), random);
+                default -> throw new IllegalArgumentException("Unknown endpoint in loadtest.mix: " + name);
+            };
+            endpoints.add(new OpenModelLoadGenerator.Endpoint(name, weight, requestFactory));
+        }
+        return endpoints;
+    }
+
+    private long randomCarId(Random random) {
+        return carIds.get(random.nextInt(carIds.size()));
+    }
+
+    private String randomCarJson(Random random) {
+        return "{\"color\":\"" + COLORS[random.nextInt(COLORS.length)] + "\","
+                + "\"model\":\"" + MODELS[random.nextInt(MODELS.length)] + "\","
+                + "\"price\":" + (5000 + random.nextInt(200) * 1000) + "}";
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private HttpRequest json(String method, String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest upload(long carId, Random random) {
+        byte[] image = new byte[20_000 + random.nextInt(80_000)];
+        random.nextBytes(image);
+        String boundary = UUID.randomUUID().toString();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(image.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load-test.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(image);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(uri("/api/cars/" + carId + "/add-image"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private String report(Map<String, OpenModelLoadGenerator.EndpointStats> stats) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Load test: %.0f req/s for %d s (warmup %d s), mix %s, seed %d%n",
+                rate, durationSeconds, warmupSeconds, mix, seed));
+        report.append(String.format("%-10s %10s %10s %10s %10s %10s %10s %8s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors"));
+        stats.forEach((name, endpointStats) -> {
+            Histogram histogram = endpointStats.latencyMicros;
+            report.append(String.format("%-10s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                    name,
+                    histogram.getTotalCount(),
+                    (double) histogram.getTotalCount() / durationSeconds,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0,
+                    endpointStats.errors.sum()));
+        });
+        return report.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package de.ait.training.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Генератор нагрузки по открытой модели: запросы отправляются с фиксированной частотой
+ * независимо от того, ответил ли сервер на предыдущие. Задержка считается от момента,
+ * когда запрос ДОЛЖЕН был уйти по расписанию, а не когда реально ушел, - так медленные ответы
+ * не прячут очередь (нет coordinated omission).
+ */
+class OpenModelLoadGenerator {
+
+    /**
+     * Один вид запроса в смеси: имя для отчета, доля в смеси и построитель запроса
+     */
+    record Endpoint(String name, int weight, Function<Random, HttpRequest> requestFactory) {
+    }
+
+    static class EndpointStats {
+        final Histogram latencyMicros = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+
+        void reset() {
+            latencyMicros.reset();
+            errors.reset();
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final List<Endpoint> endpoints;
+    private final int totalWeight;
+    private final Random random;
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+
+    OpenModelLoadGenerator(HttpClient httpClient, List<Endpoint> endpoints, long seed) {
+        this.httpClient = httpClient;
+        this.endpoints = endpoints;
+        this.totalWeight = endpoints.stream().mapToInt(Endpoint::weight).sum();
+        this.random = new Random(seed);
+        endpoints.forEach(endpoint -> stats.put(endpoint.name(), new EndpointStats()));
+    }
+
+    Map<String, EndpointStats> getStats() {
+        return stats;
+    }
+
+    void resetStats() {
+        stats.values().forEach(EndpointStats::reset);
+    }
+
+    /**
+     * Отправляет запросы с частотой ratePerSecond в течение seconds и ждет ответов на все
+     */
+    void run(double ratePerSecond, int seconds) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long total = (long) (ratePerSecond * seconds);
+        long start = System.nanoTime();
+        // ответы, которых еще ждем, плюс один за сам цикл отправки: ноль только после последнего ответа.
+        // Сами запросы не хранятся, ответ только уменьшает счетчик
+        AtomicLong inFlight = new AtomicLong(1);
+        CompletableFuture<Void> allCompleted = new CompletableFuture<>();
+        Runnable completed = () -> {
+            if (inFlight.decrementAndGet() == 0) {
+                allCompleted.complete(null);
+            }
+        };
+
+        for (long i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Endpoint endpoint = pick();
+            EndpointStats endpointStats = stats.get(endpoint.name());
+            HttpRequest request = endpoint.requestFactory().apply(random);
+            inFlight.incrementAndGet();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latency = System.nanoTime() - intendedStart;
+                        endpointStats.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                        // 4xx тоже ошибка: смесь запросов построена так, что все они должны проходить
+                        if (error != null || response.statusCode() / 100 != 2) {
+                            endpointStats.errors.increment();
+                        }
+                        completed.run();
+                    });
+        }
+
+        completed.run();
+        allCompleted.join();
+    }
+
+    private Endpoint pick() {
+        int value = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            value -= endpoint.weight();
+            if (value < 0) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+}
@@ -0,0 +1,71 @@
+package de.ait.training.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SamplingTurboFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger controllerLogger = context.getLogger("de.ait.training.controller.RestApiCarController");
+    private final Logger serviceLogger = context.getLogger("de.ait.training.service.CarServiceImpl");
+
+    private SamplingTurboFilter createFilter(int rate) {
+        SamplingTurboFilter filter = new SamplingTurboFilter();
+        filter.setLoggerName("de.ait.training.controller");
+        filter.setMaxLevel("INFO");
+        filter.setMarker("SAMPLED");
+        filter.setRate(rate);
+        filter.start();
+        return filter;
+    }
+
+    private int accepted(SamplingTurboFilter filter, Logger logger, Level level, int events) {
+        return accepted(filter, LogMarkers.SAMPLED, logger, level, events);
+    }
+
+    private int accepted(SamplingTurboFilter filter, Marker marker, Logger logger, Level level, int events) {
+        int accepted = 0;
+        for (int i = 0; i < events; i++) {
+            if (filter.decide(marker, logger, level, "Found {} cars", null, null) != FilterReply.DENY) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Test
+    @DisplayName("about 1 of rate INFO events of the configured logger is written")
+    void shouldSampleInfoEvents() {
+        int accepted = accepted(createFilter(100), controllerLogger, Level.INFO, 100_000);
+
+        assertThat(accepted).isBetween(700, 1300);
+    }
+
+    @Test
+    @DisplayName("WARN/ERROR and other loggers are never sampled")
+    void shouldKeepWarningsAndOtherLoggers() {
+        SamplingTurboFilter filter = createFilter(100);
+
+        assertThat(accepted(filter, controllerLogger, Level.WARN, 1000)).isEqualTo(1000);
+        assertThat(accepted(filter, controllerLogger, Level.ERROR, 1000)).isEqualTo(1000);
+        assertThat(accepted(filter, serviceLogger, Level.INFO, 1000)).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("INFO events without the SAMPLED marker (writes) are never sampled")
+    void shouldKeepWriteEvents() {
+        SamplingTurboFilter filter = createFilter(100);
+
+        assertThat(accepted(filter, null, controllerLogger, Level.INFO, 1000)).isEqualTo(1000);
+        assertThat(accepted(filter, MarkerFactory.getMarker("AUDIT"), controllerLogger, Level.INFO, 1000))
+                .isEqualTo(1000);
+    }
+}
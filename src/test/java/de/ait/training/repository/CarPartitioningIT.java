@@ -0,0 +1,162 @@
+package de.ait.training.repository;
+
+import de.ait.training.model.Car;
+import de.ait.training.service.CarPartitionMaintenance;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка секционирования cars (db.changelog-7.0-partition-cars.xml) на PostgreSQL:
+ * запросы CarRepository по id читают только свои секции.
+ * <p>
+ * Проверяется тот SQL, который на самом деле отправляет Hibernate: он перехватывается StatementInspector,
+ * и для него с теми же параметрами строится EXPLAIN
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CarPartitioningIT {
+
+    private static final Pattern PARTITION_SCAN = Pattern.compile(" on (cars_(?:p\\d+|p_initial|default))\\b");
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+    // фоновые потоки приложения (outbox, статистика) тоже ходят в базу, их запросы не записываются
+    private static volatile Thread testThread;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private CarPartitionMaintenance partitionMaintenance;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class StatementRecorderConfig {
+
+        @Bean
+        HibernatePropertiesCustomizer statementRecorder() {
+            StatementInspector recorder = sql -> {
+                if (Thread.currentThread() == testThread) {
+                    STATEMENTS.add(sql);
+                }
+                return sql;
+            };
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, recorder);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        testThread = Thread.currentThread();
+        STATEMENTS.clear();
+    }
+
+    @Test
+    @DisplayName("cars is partitioned by range of id, existing rows are attached as the first partition")
+    void testCarsIsPartitioned() {
+        String strategy = jdbcTemplate.queryForObject(
+                "SELECT partstrat FROM pg_partitioned_table WHERE partrelid = 'cars'::regclass", String.class);
+        assertThat(strategy).isEqualTo("r");
+        String initialBound = jdbcTemplate.queryForObject(
+                "SELECT pg_get_expr(relpartbound, oid) FROM pg_class WHERE relname = 'cars_p_initial'", String.class);
+        assertThat(initialBound).startsWith("FOR VALUES FROM (MINVALUE)");
+        assertThat(partitionMaintenance.ensurePartitions()).isZero();
+    }
+
+    @Test
+    @DisplayName("color index is on upper(color), the expression of findByColorIgnoreCase")
+    void testColorIndexMatchesQuery() {
+        String index = jdbcTemplate.queryForObject(
+                "SELECT indexdef FROM pg_indexes WHERE indexname = 'idx_cars_upper_color'", String.class);
+        assertThat(index).contains("upper((color)::text)");
+
+        carRepository.findByColorIgnoreCase("black");
+
+        assertThat(lastStatement()).containsIgnoringCase("upper(");
+    }
+
+    @Test
+    @DisplayName("id range query (findByIdBetween) is pruned to one partition")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void testIdRangeIsPruned() {
+        List<Long> ids = carRepository.findAll().stream().map(Car::getId).toList();
+        long from = ids.stream().mapToLong(Long::longValue).min().orElseThrow();
+        long to = ids.stream().mapToLong(Long::longValue).max().orElseThrow();
+
+        assertThat(carRepository.findByIdBetween(from, to)).hasSize(ids.size());
+        String plan = explain(lastStatement(), from, to);
+
+        assertThat(scannedPartitions(plan)).isEqualTo(1);
+        assertThat(plan).doesNotContain("cars_default");
+    }
+
+    @Test
+    @DisplayName("id lookup (findById) is pruned to one partition")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void testIdLookupIsPruned() {
+        Long id = carRepository.findAll().get(0).getId();
+        STATEMENTS.clear();
+
+        assertThat(carRepository.findById(id)).isPresent();
+
+        assertThat(scannedPartitions(explain(lastStatement(), id))).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("chunk delete by id list (DELETE ... RETURNING) is pruned to one partition")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void testChunkDeleteIsPruned() {
+        List<Long> ids = carRepository.findAll().stream().map(Car::getId).limit(2).toList();
+        STATEMENTS.clear();
+
+        List<CarImageRef> deleted = new TransactionTemplate(transactionManager)
+                .execute(status -> carRepository.deleteReturningImageRefs(ids, null, null, null));
+        assertThat(deleted).extracting(CarImageRef::getId).containsExactlyInAnyOrderElementsOf(ids);
+
+        // id из списка, затем по два раза color, minPrice, maxPrice (null - критерий не используется)
+        List<Object> parameters = new ArrayList<>(ids);
+        parameters.addAll(Arrays.asList(new Object[6]));
+        assertThat(scannedPartitions(explain(lastStatement(), parameters.toArray()))).isEqualTo(1);
+    }
+
+    private static String lastStatement() {
+        assertThat(STATEMENTS).isNotEmpty();
+        return STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+
+    /**
+     * Параметры передаются как в приложении, поэтому секции отсекаются при планировании так же
+     */
+    private String explain(String sql, Object... parameters) {
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters));
+    }
+
+    private long scannedPartitions(String plan) {
+        // индексы секций (cars_p00000_pkey) не считаем, только сами секции
+        return PARTITION_SCAN.matcher(plan).results().map(match -> match.group(1)).distinct().count();
+    }
+}
@@ -0,0 +1,162 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static de.ait.training.CarFixtures.car;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * События отправляет один поток sender, поэтому тест сам решает, когда подписчики читают:
+ * flush() дожидается отправки всего, что уже запланировано
+ */
+class CarChangeFeedTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+    private final CarChangeFeed feed = new CarChangeFeed(256, 4096, 0, sender);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ChangesController(feed)).build();
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    @DisplayName("reconnect with Last-Event-ID replays only the events after it")
+    void shouldReplayEventsAfterLastEventId() throws Exception {
+        MvcResult first = subscribe(null);
+        publish(3);
+        flush();
+        List<Long> ids = eventIds(first);
+        assertThat(ids).hasSize(3);
+
+        MvcResult reconnected = subscribe(ids.get(0));
+        flush();
+
+        assertThat(eventIds(reconnected)).containsExactly(ids.get(1), ids.get(2));
+        assertThat(content(reconnected)).doesNotContain("event:" + CarChangeFeed.RESET_EVENT)
+                .contains("\"model\":\"BMW 2\"");
+    }
+
+    @Test
+    @DisplayName("Last-Event-ID already pushed out of the 4096-entry history gets a reset event")
+    void shouldSendResetWhenHistoryIsGone() throws Exception {
+        // очередь больше истории: reset вызван только историей, а не размером очереди
+        CarChangeFeed bigBufferFeed = new CarChangeFeed(8192, 4096, 0, sender);
+        MockMvc bigBufferMvc = MockMvcBuilders.standaloneSetup(new ChangesController(bigBufferFeed)).build();
+        MvcResult first = bigBufferMvc.perform(get("/changes")).andReturn();
+        publishTo(bigBufferFeed, 1);
+        flush();
+        long lastEventId = eventIds(first).get(0);
+
+        // само событие вытеснено, но все следующие еще в истории
+        publishTo(bigBufferFeed, 4096);
+        MvcResult inHistory = bigBufferMvc.perform(get("/changes").header("Last-Event-ID", lastEventId)).andReturn();
+        flush();
+        assertThat(eventIds(inHistory)).hasSize(4096).startsWith(lastEventId + 1);
+        assertThat(content(inHistory)).doesNotContain("event:" + CarChangeFeed.RESET_EVENT);
+
+        publishTo(bigBufferFeed, 1);
+        MvcResult evicted = bigBufferMvc.perform(get("/changes").header("Last-Event-ID", lastEventId)).andReturn();
+        flush();
+
+        assertThat(content(evicted)).contains("event:" + CarChangeFeed.RESET_EVENT);
+        assertThat(eventIds(evicted)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("subscriber that does not read and overflows its 256-entry queue is disconnected")
+    void shouldDisconnectOverflowedSubscriber() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        // отправка стоит, пока тест не откроет gate, и очередь подписчика только растет
+        sender.execute(() -> awaitQuietly(gate));
+        subscribe(null);
+        assertThat(feed.getSubscriberCount()).isEqualTo(1);
+
+        publish(256);
+        assertThat(feed.getSubscriberCount()).isEqualTo(1);
+        publish(1);
+
+        assertThat(feed.getSubscriberCount()).isZero();
+        gate.countDown();
+        flush();
+        // отключенный подписчик переподключается как обычно
+        subscribe(null);
+        assertThat(feed.getSubscriberCount()).isEqualTo(1);
+    }
+
+    private MvcResult subscribe(Long lastEventId) throws Exception {
+        var request = get("/changes").accept(MediaType.TEXT_EVENT_STREAM);
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(request).andReturn();
+    }
+
+    private void publish(int count) {
+        publishTo(feed, count);
+    }
+
+    private static void publishTo(CarChangeFeed target, int count) {
+        for (int i = 0; i < count; i++) {
+            target.onCarChanged(new CarChangedEvent(CarChangeType.CREATED, (long) i,
+                    car(i, "red", "BMW " + i, 10000 + i)));
+        }
+    }
+
+    private void flush() throws Exception {
+        sender.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static String content(MvcResult result) throws Exception {
+        return result.getResponse().getContentAsString();
+    }
+
+    private static List<Long> eventIds(MvcResult result) throws Exception {
+        return EVENT_ID.matcher(content(result)).results().map(match -> Long.parseLong(match.group(1))).toList();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @RestController
+    static class ChangesController {
+
+        private final CarChangeFeed feed;
+
+        ChangesController(CarChangeFeed feed) {
+            this.feed = feed;
+        }
+
+        @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        public SseEmitter changes(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+            return feed.subscribe(lastEventId);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.ait.training.service;
+
+import de.ait.training.model.Car;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Быстрый режим чтения на PostgreSQL: автомобиль, созданный через API, читается обратно из снимка и дельты.
+ * В профиле test снимок выключен, здесь он включается со своим файлом во временном каталоге
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cars.snapshot.enabled=true",
+        "cars.snapshot.fast-reads=true",
+        "cars.snapshot.serve-minutes=0",
+        "cars.snapshot.chunk-size=2"
+})
+@ActiveProfiles("test")
+class CarSnapshotServiceIT {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CarSnapshotService snapshotService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void snapshotFile(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("cars-snapshot-it");
+        registry.add("cars.snapshot.file", () -> dir.resolve("cars.snapshot").toString());
+    }
+
+    @Test
+    @DisplayName("car created through the API is read back from the snapshot path, not from the database")
+    @Sql(scripts = {"classpath:sql/clear.sql.txt", "classpath:sql/seed_cars.sql.txt"})
+    void testCreatedCarIsServedFromSnapshot() throws Exception {
+        // первый снимок пишется в фоне при старте, без файла снимка - сразу
+        for (int i = 0; i < 200 && !snapshotService.isServing(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(snapshotService.isServing()).isTrue();
+        // снимок с данными этого теста, порциями по 2 строки
+        snapshotService.writeSnapshot();
+        assertThat(restTemplate.getForEntity("/api/cars", Car[].class).getBody()).hasSize(4);
+
+        ResponseEntity<Car> created = restTemplate.postForEntity("/api/cars",
+                new Car("Silver", "Skoda Octavia", 21000), Car.class);
+        assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Long id = created.getBody().getId();
+
+        // строка удаляется в обход приложения: если автомобиль все же найден, ответ пришел из снимка
+        jdbcTemplate.update("DELETE FROM cars WHERE id = ?", id);
+
+        ResponseEntity<Car> byId = restTemplate.getForEntity("/api/cars/{id}", Car.class, id);
+        assertThat(byId.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(byId.getBody().getModel()).isEqualTo("Skoda Octavia");
+        ResponseEntity<Car[]> byColor = restTemplate.getForEntity("/api/cars/color/silver", Car[].class);
+        assertThat(byColor.getBody()).extracting(Car::getModel).containsExactly("Skoda Octavia");
+        assertThat(restTemplate.getForEntity("/api/cars", Car[].class).getBody()).hasSize(5);
+    }
+}
@@ -0,0 +1,233 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.ait.training.CarFixtures.car;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CarSnapshotServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<CarSnapshotService> services = new ArrayList<>();
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (CarSnapshotService service : services) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("snapshot file is read back: fields, dictionary values, nulls and lookup by id")
+    void shouldReadWrittenSnapshot() throws Exception {
+        Path file = tempDir.resolve("cars.snapshot");
+        writeSnapshot(file, car(1L, "Black", "BMW x5", 25000, "petrol", "http://localhost/images/1-bmw.jpg"),
+                car(5L, "green", "Audi A4", 15000, null, null),
+                car(9L, "black", "MB A220", 18000, "diesel", null));
+
+        CarSnapshot snapshot = CarSnapshot.open(file);
+
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.indexOf(5L)).isEqualTo(1);
+        assertThat(snapshot.indexOf(6L)).isEqualTo(-1);
+        Car first = snapshot.car(0);
+        assertThat(first.getId()).isEqualTo(1L);
+        assertThat(first.getColor()).isEqualTo("Black");
+        assertThat(first.getModel()).isEqualTo("BMW x5");
+        assertThat(first.getPrice()).isEqualTo(25000);
+        assertThat(first.getYear()).isEqualTo(2021);
+        assertThat(first.getEngineType()).isEqualTo("petrol");
+        assertThat(first.getImageUrl()).isEqualTo("http://localhost/images/1-bmw.jpg");
+        Car second = snapshot.car(1);
+        assertThat(second.getEngineType()).isNull();
+        assertThat(second.getImageUrl()).isNull();
+    }
+
+    @Test
+    @DisplayName("cars added not in id order, writer fails and removes unfinished file")
+    void shouldRejectUnorderedCars() throws Exception {
+        Path file = tempDir.resolve("cars.snapshot");
+        try (CarSnapshot.Writer writer = CarSnapshot.writer(file)) {
+            writer.add(car(2L, "red", "Ferrari", 250000, null, null));
+            assertThatThrownBy(() -> writer.add(car(1L, "red", "Ferrari", 250000, null, null)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("queries by color and price are served from the snapshot")
+    void shouldServeQueriesFromSnapshot() throws Exception {
+        writeDefaultSnapshot();
+        CarSnapshotService service = startService();
+
+        assertThat(service.isServing()).isTrue();
+        assertThat(service.findAll()).hasSize(4);
+        assertThat(service.findByColor("black")).extracting(Car::getModel).containsExactly("BMW x5", "MB A220");
+        assertThat(service.findByPriceBetween(15000, 20000)).extracting(Car::getId).containsExactly(2L, 3L);
+        assertThat(service.findByPriceLessThanEqual(15000)).extracting(Car::getId).containsExactly(2L);
+        assertThat(service.findByPriceGreaterThanEqual(250000)).extracting(Car::getId).containsExactly(4L);
+        assertThat(service.findById(3L).getModel()).isEqualTo("MB A220");
+        assertThat(service.findById(42L)).isNull();
+    }
+
+    @Test
+    @DisplayName("changes after the snapshot override it and survive a restart through the delta log")
+    void shouldApplyDeltaOverSnapshot() throws Exception {
+        writeDefaultSnapshot();
+        CarSnapshotService service = startService();
+
+        service.onCarChanged(new CarChangedEvent(CarChangeType.UPDATED, 1L,
+                car(1L, "white", "BMW x5", 26000, "petrol", null)));
+        service.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 2L, null));
+        service.onCarChanged(new CarChangedEvent(CarChangeType.CREATED, 10L,
+                car(10L, "Black", "VW Golf", 12000, "diesel", null)));
+
+        assertDelta(service);
+
+        service.shutdown();
+        services.remove(service);
+        assertDelta(startService());
+    }
+
+    @Test
+    @DisplayName("new snapshot is read in chunks by id, each chunk a separate query")
+    @SuppressWarnings("unchecked")
+    void shouldWriteSnapshotInChunks() throws Exception {
+        writeDefaultSnapshot();
+        CarSnapshotService service = startService(2, 60);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(Long.MIN_VALUE), eq(2)))
+                .thenReturn(List.of(car(1L, "black", "BMW x5", 25000, "petrol", null),
+                        car(5L, "white", "VW Golf", 12000, "diesel", null)));
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(5L), eq(2)))
+                .thenReturn(List.of(car(7L, "red", "Ferrari", 250000, "petrol", null)));
+
+        service.writeSnapshot();
+
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(Long.MIN_VALUE), eq(2));
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(5L), eq(2));
+        assertThat(service.findAll()).extracting(Car::getId).containsExactly(1L, 5L, 7L);
+    }
+
+    @Test
+    @DisplayName("delta write fails: stream closed, no more writes, reads go to the database until the next snapshot")
+    @SuppressWarnings("unchecked")
+    void shouldStopServingWhenDeltaFails() throws Exception {
+        writeDefaultSnapshot();
+        CarSnapshotService service = startService();
+        AtomicInteger writes = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        ReflectionTestUtils.setField(service, "deltaOut", new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writes.incrementAndGet();
+                throw new IOException("No space left on device");
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }));
+
+        service.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 2L, null));
+        service.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 5L, null));
+
+        assertThat(service.isServing()).isFalse();
+        assertThat(tempDir.resolve("cars.snapshot")).doesNotExist();
+        assertThat(writes.get()).isEqualTo(1);
+        assertThat(closed.get()).isTrue();
+
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(Long.MIN_VALUE), anyInt()))
+                .thenReturn(List.of(car(1L, "black", "BMW x5", 25000, "petrol", null)));
+        service.writeSnapshot();
+
+        assertThat(service.isServing()).isTrue();
+        assertThat(tempDir.resolve("cars.snapshot")).exists();
+        service.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 1L, null));
+        assertThat(service.findAll()).isEmpty();
+        assertThat(tempDir.resolve("cars.snapshot.delta")).isNotEmptyFile();
+    }
+
+    @Test
+    @DisplayName("snapshot is served only for serve-minutes after start")
+    void shouldStopServingAfterWarmUp() throws Exception {
+        writeDefaultSnapshot();
+        CarSnapshotService service = startService(100, 5);
+        assertThat(service.isServing()).isTrue();
+
+        ReflectionTestUtils.setField(service, "startedAt", System.currentTimeMillis() - 6 * 60_000L);
+
+        assertThat(service.isServing()).isFalse();
+    }
+
+    private void assertDelta(CarSnapshotService service) {
+        assertThat(service.findAll()).extracting(Car::getId).containsExactlyInAnyOrder(1L, 3L, 4L, 10L);
+        assertThat(service.findByColor("black")).extracting(Car::getId).containsExactlyInAnyOrder(3L, 10L);
+        assertThat(service.findByColor("white")).extracting(Car::getPrice).containsExactly(26000.0);
+        assertThat(service.findByPriceLessThanEqual(15000)).extracting(Car::getId).containsExactly(10L);
+        assertThat(service.findById(2L)).isNull();
+        assertThat(service.findById(10L).getModel()).isEqualTo("VW Golf");
+    }
+
+    private void writeDefaultSnapshot() throws IOException {
+        writeSnapshot(tempDir.resolve("cars.snapshot"),
+                car(1L, "black", "BMW x5", 25000, "petrol", null),
+                car(2L, "green", "Audi A4", 15000, "petrol", null),
+                car(3L, "Black", "MB A220", 18000, "diesel", null),
+                car(4L, "red", "Ferrari", 250000, "petrol", null));
+    }
+
+    private CarSnapshotService startService() throws IOException {
+        return startService(100, 0);
+    }
+
+    private CarSnapshotService startService(int chunkSize, long serveMinutes) throws IOException {
+        // новый снимок за время теста сам не пишется: интервал больше длительности теста
+        CarSnapshotService service = new CarSnapshotService(jdbcTemplate, true, true, serveMinutes,
+                tempDir.resolve("cars.snapshot").toString(), 60, 60, chunkSize);
+        services.add(service);
+        service.start();
+        return service;
+    }
+
+    private static void writeSnapshot(Path file, Car... cars) throws IOException {
+        try (CarSnapshot.Writer writer = CarSnapshot.writer(file)) {
+            for (Car car : cars) {
+                writer.add(car);
+            }
+            writer.finish(System.currentTimeMillis());
+        }
+        assertThat(Files.size(file)).isGreaterThan(CarSnapshot.HEADER_SIZE);
+    }
+}
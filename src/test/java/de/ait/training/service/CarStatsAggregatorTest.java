@@ -0,0 +1,72 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStatsDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static de.ait.training.CarFixtures.car;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CarStatsAggregatorTest {
+
+
+    @Test
+    @DisplayName("counts, min/max/avg and histogram are calculated, color is case insensitive")
+    void shouldAggregateCars() {
+        CarStatsAggregator aggregator = new CarStatsAggregator(10000);
+        aggregator.upsert(car(1, "black", "Test model", 25000, "petrol", null));
+        aggregator.upsert(car(2, "Black", "Test model", 15000, "diesel", null));
+        aggregator.upsert(car(3, "red", "Test model", 250000, null, null));
+
+        CarStatsDto stats = aggregator.toDto();
+
+        assertThat(stats.getTotal()).isEqualTo(3);
+        assertThat(stats.getCountByColor()).containsEntry("black", 2L).containsEntry("red", 1L);
+        assertThat(stats.getCountByEngineType()).containsEntry(CarStatsAggregator.UNKNOWN, 1L);
+        assertThat(stats.getMinPrice()).isEqualTo(15000.0);
+        assertThat(stats.getMaxPrice()).isEqualTo(250000.0);
+        assertThat(stats.getAvgPrice()).isEqualTo(290000.0 / 3);
+        assertThat(stats.getPriceHistogram())
+                .containsEntry(10000.0, 1L)
+                .containsEntry(20000.0, 1L)
+                .containsEntry(250000.0, 1L);
+    }
+
+    @Test
+    @DisplayName("update replaces old values, delete removes them, repeated events are ignored")
+    void shouldApplyUpdatesAndDeletes() {
+        CarStatsAggregator aggregator = new CarStatsAggregator(10000);
+        aggregator.upsert(car(1, "black", "Test model", 25000, "petrol", null));
+        aggregator.upsert(car(2, "green", "Test model", 15000, "petrol", null));
+
+        aggregator.upsert(car(1, "white", "Test model", 18000, "petrol", null));
+        aggregator.upsert(car(1, "white", "Test model", 18000, "petrol", null));
+        aggregator.remove(2L);
+        aggregator.remove(2L);
+
+        CarStatsDto stats = aggregator.toDto();
+
+        assertThat(stats.getTotal()).isEqualTo(1);
+        assertThat(stats.getCountByColor()).containsOnlyKeys("white");
+        assertThat(stats.getCountByEngineType()).containsEntry("petrol", 1L);
+        assertThat(stats.getMinPrice()).isEqualTo(18000.0);
+        assertThat(stats.getMaxPrice()).isEqualTo(18000.0);
+        assertThat(stats.getPriceHistogram()).containsOnlyKeys(10000.0);
+    }
+
+    @Test
+    @DisplayName("parallel parts merged together give the same result")
+    void shouldMergeParts() {
+        CarStatsAggregator first = new CarStatsAggregator(10000);
+        first.upsert(car(1, "black", "Test model", 25000, "petrol", null));
+        CarStatsAggregator second = new CarStatsAggregator(10000);
+        second.upsert(car(2, "black", "Test model", 15000, "diesel", null));
+
+        first.merge(second);
+        CarStatsDto stats = first.toDto();
+
+        assertThat(stats.getTotal()).isEqualTo(2);
+        assertThat(stats.getCountByColor()).containsEntry("black", 2L);
+        assertThat(stats.getAvgPrice()).isEqualTo(20000.0);
+    }
+}
@@ -0,0 +1,142 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.ait.training.CarFixtures.car;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CarStatsServiceTest {
+
+    private CarRepository repository;
+    private CarStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CarRepository.class);
+        when(repository.findMinId()).thenReturn(1L);
+        when(repository.findMaxId()).thenReturn(100L);
+        // повтор по расписанию за время теста не наступает, тест вызывает пересчет сам
+        service = new CarStatsService(repository, 10000, 10, 2, 3600, 1_000_000, 100_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("chunks are loaded with at most load-parallelism concurrent queries")
+    void shouldLimitConcurrentQueries() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(repository.findByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            Long from = invocation.getArgument(0);
+            return List.of(car(from, "black", "Test model", 25000));
+        });
+
+        service.recompute();
+
+        assertThat(maxActive.get()).isBetween(1, 2);
+        assertThat(service.getStats().getTotal()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("failing chunk, no statistics yet, changes are kept and applied after the retry")
+    void shouldRetryAfterFailingChunk() {
+        when(repository.findByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Long from = invocation.getArgument(0);
+            return List.of(car(from, "black", "Test model", 25000));
+        });
+        when(repository.findByIdBetween(41L, 50L))
+                .thenThrow(new QueryTimeoutException("Connection is not available"))
+                .thenReturn(List.of(car(41L, "black", "Test model", 25000)));
+
+        service.recompute();
+
+        assertThat(service.getStats()).isNull();
+
+        service.onCarChanged(new CarChangedEvent(CarChangeType.CREATED, 101L, car(101L, "red", "Test model", 250000)));
+        service.recompute();
+
+        assertThat(service.getStats().getTotal()).isEqualTo(11);
+        assertThat(service.getStats().getCountByColor()).containsEntry("black", 10L).containsEntry("red", 1L);
+    }
+
+    @Test
+    @DisplayName("failing recompute keeps the previous statistics, changes are still applied")
+    void shouldKeepPreviousStatisticsWhenRecomputeFails() {
+        when(repository.findByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Long from = invocation.getArgument(0);
+            return List.of(car(from, "black", "Test model", 25000));
+        });
+        service.recompute();
+        when(repository.findByIdBetween(41L, 50L)).thenThrow(new QueryTimeoutException("Connection is not available"));
+
+        service.recompute();
+        service.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 1L, null));
+
+        assertThat(service.getStats().getTotal()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("too many changes during the recompute, they are dropped and the statistics is recomputed again")
+    void shouldRecomputeAgainWhenPendingEventsOverflow() {
+        CarStatsService smallBuffer = new CarStatsService(repository, 10000, 10, 2, 3600, 1_000_000, 2);
+        AtomicBoolean changed = new AtomicBoolean();
+        when(repository.findByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            if (changed.compareAndSet(false, true)) {
+                for (long id = 201; id <= 203; id++) {
+                    smallBuffer.onCarChanged(new CarChangedEvent(CarChangeType.CREATED, id,
+                            car(id, "red", "Test model", 1000)));
+                }
+            }
+            Long from = invocation.getArgument(0);
+            return List.of(car(from, "black", "Test model", 25000));
+        });
+
+        smallBuffer.recompute();
+
+        // изменения отброшены, а не применены; второй пересчет читает все из базы
+        verify(repository, timeout(5000).times(20)).findByIdBetween(anyLong(), anyLong());
+        assertThat(smallBuffer.getStats().getCountByColor()).containsOnlyKeys("black");
+        smallBuffer.shutdown();
+    }
+
+    @Test
+    @DisplayName("more cars than max-tracked-cars, changes trigger a recompute instead of being applied")
+    void shouldRecomputeOnChangesWhenCarsAreNotTracked() {
+        CarStatsService untracked = new CarStatsService(repository, 10000, 10, 2, 0, 5, 100_000);
+        when(repository.count()).thenReturn(10L);
+        when(repository.findByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Long from = invocation.getArgument(0);
+            return List.of(car(from, "black", "Test model", 25000));
+        });
+        untracked.recompute();
+        assertThat(untracked.getStats().getTotal()).isEqualTo(10);
+
+        untracked.onCarChanged(new CarChangedEvent(CarChangeType.DELETED, 1L, null));
+
+        verify(repository, timeout(5000).times(20)).findByIdBetween(anyLong(), anyLong());
+        assertThat(untracked.getStats().getTotal()).isEqualTo(10);
+        untracked.shutdown();
+    }
+}
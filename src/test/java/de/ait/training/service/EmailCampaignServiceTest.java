@@ -0,0 +1,190 @@
+package de.ait.training.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import de.ait.training.dto.EmailCampaignRequest;
+import de.ait.training.dto.EmailCampaignStatusDto;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailCampaignServiceTest {
+
+    // локальный SMTP-сервер вместо gmail
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private EmailCampaignService createService(int maxPerSecond) {
+        return createService(maxPerSecond, 1000);
+    }
+
+    private EmailCampaignService createService(int maxPerSecond, int maxKept) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        return new EmailCampaignService(mailSender, templateEngine, "cars@test.local", 3, 4, maxPerSecond,
+                60, maxKept);
+    }
+
+    private EmailCampaignStatusDto waitForCompletion(EmailCampaignService service, String id) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            EmailCampaignStatusDto status = service.getStatus(id);
+            if ("COMPLETED".equals(status.getStatus())) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Campaign was not completed in time");
+    }
+
+    @Test
+    @DisplayName("every recipient gets the template with own variables, status COMPLETED")
+    void shouldSendPersonalizedEmails() throws Exception {
+        EmailCampaignService service = createService(0);
+        List<EmailCampaignRequest.Recipient> recipients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            recipients.add(new EmailCampaignRequest.Recipient("client" + i + "@test.local",
+                    Map.of("username", "Client" + i)));
+        }
+        recipients.add(new EmailCampaignRequest.Recipient("tom@test.local", Map.of("username", "Tom & Jerry")));
+        EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/CarService",
+                Map.of("title", "Welcome to our service", "promoCode", "AIT-223344"), recipients);
+
+        EmailCampaignStatusDto status = waitForCompletion(service, service.startCampaign(request));
+
+        assertThat(status.getTotal()).isEqualTo(11);
+        assertThat(status.getSent()).isEqualTo(11);
+        assertThat(status.getFailed()).isEqualTo(0);
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received.length).isEqualTo(11);
+        MimeMessage client3 = Arrays.stream(received)
+                .filter(message -> GreenMailUtil.getAddressList(message.getAllRecipients())
+                        .contains("client3@test.local"))
+                .findFirst().orElseThrow();
+        assertThat(GreenMailUtil.getBody(client3)).contains("Client3").contains("AIT-223344")
+                .doesNotContain("@@username@@");
+
+        MimeMessage tom = Arrays.stream(received)
+                .filter(message -> GreenMailUtil.getAddressList(message.getAllRecipients())
+                        .contains("tom@test.local"))
+                .findFirst().orElseThrow();
+        assertThat(GreenMailUtil.getBody(tom)).contains("Tom &amp; Jerry");
+    }
+
+    @Test
+    @DisplayName("throttling limits the delivery rate")
+    void shouldThrottleDelivery() throws Exception {
+        EmailCampaignService service = createService(20);
+        List<EmailCampaignRequest.Recipient> recipients = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            recipients.add(new EmailCampaignRequest.Recipient("client" + i + "@test.local", Map.of()));
+        }
+        EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/CarService",
+                Map.of(), recipients);
+
+        long start = System.currentTimeMillis();
+        EmailCampaignStatusDto status = waitForCompletion(service, service.startCampaign(request));
+
+        // 12 писем по 20 в секунду: последняя пачка уходит не раньше слота своего последнего письма, 11 * 50 мс
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(550);
+        assertThat(status.getSent()).isEqualTo(12);
+    }
+
+    @Test
+    @DisplayName("recipient without own variable gets the shared value, one with own value gets own")
+    void shouldFallBackToSharedVariable() throws Exception {
+        EmailCampaignService service = createService(0);
+        Map<String, String> noVariables = new HashMap<>();
+        List<EmailCampaignRequest.Recipient> recipients = List.of(
+                new EmailCampaignRequest.Recipient("anna@test.local", Map.of("username", "Anna")),
+                new EmailCampaignRequest.Recipient("guest@test.local", noVariables),
+                new EmailCampaignRequest.Recipient("nobody@test.local", null));
+        EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/CarService",
+                Map.of("username", "Dear client"), recipients);
+
+        EmailCampaignStatusDto status = waitForCompletion(service, service.startCampaign(request));
+
+        assertThat(status.getSent()).isEqualTo(3);
+        assertThat(bodyOf("anna@test.local")).contains("Anna").doesNotContain("Dear client");
+        assertThat(bodyOf("guest@test.local")).contains("Dear client");
+        assertThat(bodyOf("nobody@test.local")).contains("Dear client");
+    }
+
+    @Test
+    @DisplayName("recipient without email, campaign is rejected before sending")
+    void shouldRejectRecipientWithoutEmail() {
+        EmailCampaignService service = createService(0);
+        List<EmailCampaignRequest.Recipient> recipients = new ArrayList<>();
+        recipients.add(new EmailCampaignRequest.Recipient("client@test.local", Map.of()));
+        recipients.add(new EmailCampaignRequest.Recipient(null, Map.of()));
+        EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/CarService",
+                Map.of(), recipients);
+
+        assertThatThrownBy(() -> service.startCampaign(request))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Recipient 1");
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("template changes a personal variable marker, campaign is rejected before sending")
+    void shouldRejectTemplateThatChangesPersonalVariable() {
+        EmailCampaignService service = createService(0);
+        EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/Shouting", Map.of(),
+                List.of(new EmailCampaignRequest.Recipient("client@test.local", Map.of("username", "Anna"))));
+
+        assertThatThrownBy(() -> service.startCampaign(request))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("username");
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("more finished campaigns than max-kept, the oldest are evicted")
+    void shouldEvictOldestFinishedCampaigns() throws Exception {
+        EmailCampaignService service = createService(0, 2);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            EmailCampaignRequest request = new EmailCampaignRequest("Car service time", "email/CarService",
+                    Map.of(), List.of(new EmailCampaignRequest.Recipient("client" + i + "@test.local", Map.of())));
+            String id = service.startCampaign(request);
+            waitForCompletion(service, id);
+            ids.add(id);
+        }
+
+        assertThat(service.getStatus(ids.get(0))).isNull();
+        assertThat(service.getStatus(ids.get(1))).isNotNull();
+        assertThat(service.getStatus(ids.get(2))).isNotNull();
+    }
+
+    private static String bodyOf(String address) {
+        MimeMessage message = Arrays.stream(greenMail.getReceivedMessages())
+                .filter(received -> GreenMailUtil.getAddressList(received.getAllRecipients()).contains(address))
+                .findFirst().orElseThrow();
+        return GreenMailUtil.getBody(message);
+    }
+}
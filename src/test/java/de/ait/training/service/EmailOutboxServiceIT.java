@@ -0,0 +1,219 @@
+package de.ait.training.service;
+
+import de.ait.training.model.EmailOutboxMessage;
+import de.ait.training.model.EmailOutboxStatus;
+import de.ait.training.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Очередь email_outbox на PostgreSQL: FOR UPDATE SKIP LOCKED, повторы и аренда.
+ * Фоновые потоки EmailOutboxWorker выключены, письма забирает сам тест
+ */
+@SpringBootTest(properties = {
+        "app.mail.outbox.workers=0",
+        "app.mail.outbox.max-attempts=3",
+        "app.mail.outbox.backoff-initial-seconds=10",
+        "app.mail.outbox.backoff-max-seconds=15",
+        "app.mail.outbox.lease-seconds=300"
+})
+@ActiveProfiles("test")
+class EmailOutboxServiceIT {
+
+    @Autowired
+    private EmailOutboxService outboxService;
+
+    @Autowired
+    private EmailOutboxRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM email_outbox");
+    }
+
+    @Test
+    @DisplayName("rows locked by one worker are skipped by another, both get different messages")
+    void testLockedRowsAreSkipped() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            enqueue(i);
+        }
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // первый "экземпляр" держит транзакцию с заблокированными строками открытой
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Future<List<Long>> first = executor.submit(() -> transaction.execute(status -> {
+            List<Long> ids = repository.lockBatchForSending(2).stream().map(EmailOutboxMessage::getId).toList();
+            locked.countDown();
+            await(release);
+            return ids;
+        }));
+        assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<Long> second = outboxService.claimBatch(10).stream().map(EmailOutboxMessage::getId).toList();
+        release.countDown();
+        List<Long> firstIds = first.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(firstIds).hasSize(2);
+        assertThat(second).hasSize(2).doesNotContainAnyElementsOf(firstIds);
+    }
+
+    @Test
+    @DisplayName("concurrent workers claim every message exactly once")
+    void testConcurrentClaimsDoNotOverlap() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            enqueue(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<Long>>> workers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            workers.add(executor.submit(() -> {
+                List<Long> claimed = new ArrayList<>();
+                List<EmailOutboxMessage> batch;
+                do {
+                    batch = outboxService.claimBatch(3);
+                    batch.forEach(message -> claimed.add(message.getId()));
+                } while (!batch.isEmpty());
+                return claimed;
+            }));
+        }
+        List<Long> all = new ArrayList<>();
+        for (Future<List<Long>> worker : workers) {
+            all.addAll(worker.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertThat(all).hasSize(40).doesNotHaveDuplicates();
+        assertThat(repository.findAll()).allSatisfy(message -> {
+            assertThat(message.getStatus()).isEqualTo(EmailOutboxStatus.SENDING);
+            assertThat(message.getAttempts()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    @DisplayName("failed message is retried with exponential backoff and becomes FAILED after max attempts")
+    void testRetryWithBackoff() {
+        Long id = enqueue(1).getId();
+
+        outboxService.markFailed(claim(id), new IllegalStateException("SMTP is down"));
+        EmailOutboxMessage afterFirst = repository.findById(id).orElseThrow();
+        assertThat(afterFirst.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(afterFirst.getLastError()).isEqualTo("SMTP is down");
+        assertThat(Duration.between(Instant.now(), afterFirst.getNextAttemptAt()).toSeconds())
+                .isCloseTo(10, within(2L));
+        // до окончания задержки письмо не забирается
+        assertThat(outboxService.claimBatch(10)).isEmpty();
+
+        makeDue(id);
+        outboxService.markFailed(claim(id), new IllegalStateException());
+        EmailOutboxMessage afterSecond = repository.findById(id).orElseThrow();
+        // 20 s, но не больше backoff-max-seconds
+        assertThat(Duration.between(Instant.now(), afterSecond.getNextAttemptAt()).toSeconds())
+                .isCloseTo(15, within(2L));
+        assertThat(afterSecond.getLastError()).isEqualTo("null");
+
+        makeDue(id);
+        outboxService.markFailed(claim(id), new IllegalStateException("SMTP is down"));
+        EmailOutboxMessage last = repository.findById(id).orElseThrow();
+        assertThat(last.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(last.getAttempts()).isEqualTo(3);
+        makeDue(id);
+        assertThat(outboxService.claimBatch(10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("message of a crashed worker is claimed again only after its lease expired, Message-ID is kept")
+    void testExpiredLeaseIsReclaimed() {
+        EmailOutboxMessage message = enqueue(1);
+        Long id = message.getId();
+
+        EmailOutboxMessage first = claim(id);
+        // экземпляр "упал": ни markSent, ни markFailed
+        assertThat(outboxService.claimBatch(10)).isEmpty();
+
+        jdbcTemplate.update("UPDATE email_outbox SET locked_until = now() - interval '1 second' WHERE id = ?", id);
+        EmailOutboxMessage second = claim(id);
+
+        assertThat(second.getAttempts()).isEqualTo(2);
+        assertThat(outboxService.messageId(second)).isEqualTo(outboxService.messageId(first));
+
+        outboxService.markSent(second);
+        jdbcTemplate.update("UPDATE email_outbox SET locked_until = now() - interval '1 second' WHERE id = ?", id);
+        assertThat(outboxService.claimBatch(10)).isEmpty();
+        assertThat(repository.findById(id).orElseThrow().getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+    }
+
+    @Test
+    @DisplayName("worker whose lease expired and was reclaimed can not extend it or change the message")
+    void testLostLeaseDoesNotChangeMessage() {
+        Long id = enqueue(1).getId();
+        EmailOutboxMessage slow = claim(id);
+        assertThat(outboxService.extendLease(slow)).isTrue();
+
+        jdbcTemplate.update("UPDATE email_outbox SET locked_until = now() - interval '1 second' WHERE id = ?", id);
+        EmailOutboxMessage reclaimed = claim(id);
+
+        assertThat(outboxService.extendLease(slow)).isFalse();
+        assertThat(outboxService.markFailed(slow, new IllegalStateException("SMTP timeout"))).isFalse();
+        assertThat(outboxService.markSent(slow)).isFalse();
+        EmailOutboxMessage current = repository.findById(id).orElseThrow();
+        assertThat(current.getStatus()).isEqualTo(EmailOutboxStatus.SENDING);
+        assertThat(current.getLastError()).isNull();
+
+        assertThat(outboxService.markSent(reclaimed)).isTrue();
+        assertThat(repository.findById(id).orElseThrow().getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+    }
+
+    private EmailOutboxMessage enqueue(int number) {
+        return outboxService.enqueue("client" + number + "@test.local", "Car service time", "email/CarService",
+                Map.of("username", "Client" + number));
+    }
+
+    private EmailOutboxMessage claim(Long id) {
+        List<EmailOutboxMessage> batch = outboxService.claimBatch(10);
+        assertThat(batch).extracting(EmailOutboxMessage::getId).containsExactly(id);
+        return batch.get(0);
+    }
+
+    private void makeDue(Long id) {
+        jdbcTemplate.update("UPDATE email_outbox SET next_attempt_at = now() - interval '1 second' WHERE id = ?", id);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
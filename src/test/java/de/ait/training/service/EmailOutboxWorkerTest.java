@@ -0,0 +1,113 @@
+package de.ait.training.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import de.ait.training.model.EmailOutboxMessage;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmailOutboxWorkerTest {
+
+    // локальный SMTP-сервер вместо gmail
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private EmailOutboxService outboxService;
+    private EmailOutboxWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        outboxService = mock(EmailOutboxService.class);
+        EmailService emailService = new EmailService(mailSender, templateEngine, outboxService);
+        ReflectionTestUtils.setField(emailService, "fromAddress", "cars@test.local");
+        worker = new EmailOutboxWorker(outboxService, emailService, 1, 10, 1000);
+    }
+
+    @Test
+    @DisplayName("message is sent again after a crash before markSent, both copies have the same Message-ID")
+    void shouldKeepMessageIdAcrossAttempts() throws Exception {
+        EmailOutboxMessage message = message(42L, "client@test.local");
+        when(outboxService.claimBatch(10)).thenReturn(List.of(message));
+        when(outboxService.extendLease(message)).thenReturn(true);
+        when(outboxService.readVariables(message)).thenReturn(Map.of("username", "Client"));
+        when(outboxService.messageId(message)).thenReturn("outbox-42.1700000000000");
+
+        worker.drain();
+        worker.drain();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(2);
+        assertThat(received[0].getMessageID()).isEqualTo("<outbox-42.1700000000000@test.local>");
+        assertThat(received[1].getMessageID()).isEqualTo(received[0].getMessageID());
+        verify(outboxService, times(2)).markSent(message);
+    }
+
+    @Test
+    @DisplayName("message can not be prepared, it is marked failed and not sent")
+    void shouldMarkFailedWhenDeliveryFails() {
+        EmailOutboxMessage message = message(7L, "client@test.local");
+        IllegalStateException error = new IllegalStateException("Email 7 has broken variables");
+        when(outboxService.claimBatch(10)).thenReturn(List.of(message));
+        when(outboxService.extendLease(message)).thenReturn(true);
+        when(outboxService.readVariables(message)).thenThrow(error);
+
+        worker.drain();
+
+        verify(outboxService).markFailed(message, error);
+        verify(outboxService, never()).markSent(message);
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("lease can not be extended (message reclaimed by another worker), message is not sent")
+    void shouldSkipMessageWithLostLease() {
+        EmailOutboxMessage message = message(9L, "client@test.local");
+        when(outboxService.claimBatch(10)).thenReturn(List.of(message));
+        when(outboxService.extendLease(message)).thenReturn(false);
+
+        worker.drain();
+
+        verify(outboxService, never()).markSent(message);
+        verify(outboxService, never()).markFailed(eq(message), any());
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+    }
+
+    private static EmailOutboxMessage message(Long id, String recipient) {
+        EmailOutboxMessage message = new EmailOutboxMessage(recipient, "Car service time", "email/CarService", "{}");
+        message.setId(id);
+        message.setCreatedAt(Instant.ofEpochMilli(1_700_000_000_000L));
+        return message;
+    }
+}
@@ -0,0 +1,252 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.ImageUploadStatusDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageUploadServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("chunks uploaded in parallel and out of order give the original file, car image is attached once")
+    void shouldAssembleFileFromParallelChunks() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(42).nextBytes(content);
+
+        CarService carService = mock(CarService.class);
+        AtomicReference<byte[]> committed = new AtomicReference<>();
+        when(carService.attachImageFile(eq(1L), any(Path.class), eq("bmw.jpg"))).thenAnswer(invocation -> {
+            committed.set(Files.readAllBytes(invocation.getArgument(1)));
+            return "http://localhost:8080/uuid-bmw.jpg";
+        });
+        ImageUploadService service = new ImageUploadService(carService, tempDir.toString(), 1_000_000, 60);
+
+        String uploadId = service.createSession(1L, "bmw.jpg", content.length).getUploadId();
+
+        List<long[]> chunks = List.of(new long[]{200_000, 300_000}, new long[]{0, 100_000}, new long[]{100_000, 200_000});
+        ExecutorService executor = Executors.newFixedThreadPool(chunks.size());
+        List<Future<ImageUploadStatusDto>> results = chunks.stream()
+                .map(chunk -> executor.submit(() -> service.writeChunk(1L, uploadId, chunk[0],
+                        new ByteArrayInputStream(Arrays.copyOfRange(content, (int) chunk[0], (int) chunk[1])))))
+                .toList();
+        long completed = 0;
+        for (Future<ImageUploadStatusDto> result : results) {
+            if (result.get().isCompleted()) {
+                completed++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(completed).isEqualTo(1);
+        assertThat(committed.get()).isEqualTo(content);
+        verify(carService).attachImageFile(eq(1L), any(Path.class), eq("bmw.jpg"));
+        assertThat(service.getStatus(1L, uploadId)).isNull();
+    }
+
+    @Test
+    @DisplayName("connection dropped in the middle of a chunk, bytes already written are kept, resume starts there")
+    void shouldResumeAfterDroppedConnection() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+        CarService carService = mock(CarService.class);
+        AtomicReference<byte[]> committed = new AtomicReference<>();
+        when(carService.attachImageFile(eq(1L), any(Path.class), eq("bmw.jpg"))).thenAnswer(invocation -> {
+            committed.set(Files.readAllBytes(invocation.getArgument(1)));
+            return "http://localhost:8080/uuid-bmw.jpg";
+        });
+        ImageUploadService service = new ImageUploadService(carService, tempDir.toString(), 1_000_000, 60);
+        String uploadId = service.createSession(1L, "bmw.jpg", content.length).getUploadId();
+
+        // соединение оборвалось на 100 000 байтах из 300 000
+        assertThatThrownBy(() -> service.writeChunk(1L, uploadId, 0, new DroppingInputStream(content, 100_000)))
+                .isInstanceOf(IOException.class);
+
+        ImageUploadStatusDto status = service.getStatus(1L, uploadId);
+        assertThat(status.isCompleted()).isFalse();
+        assertThat(status.getReceived()).isEqualTo(100_000);
+        assertThat(status.getMissingRanges()).hasSize(1);
+        assertThat(status.getMissingRanges().get(0)).containsExactly(100_000, 300_000);
+        verify(carService, never()).attachImageFile(any(), any(), any());
+
+        long resumeAt = status.getMissingRanges().get(0)[0];
+        status = service.writeChunk(1L, uploadId, resumeAt,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, (int) resumeAt, content.length)));
+
+        assertThat(status.isCompleted()).isTrue();
+        assertThat(committed.get()).isEqualTo(content);
+    }
+
+    @Test
+    @DisplayName("abandoned sessions are removed together with the temp file")
+    void shouldRemoveAbandonedSessions() throws Exception {
+        ImageUploadService service = new ImageUploadService(mock(CarService.class), tempDir.toString(), 1_000_000, 0);
+        String uploadId = service.createSession(1L, "bmw.jpg", 1000).getUploadId();
+        Thread.sleep(5);
+
+        service.removeExpiredSessions();
+
+        assertThat(service.getStatus(1L, uploadId)).isNull();
+        try (var files = Files.list(tempDir)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("chunk still being written when the file completes: commit waits, both callers get the image url")
+    void shouldCommitAfterInFlightChunk() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(3).nextBytes(content);
+        CarService carService = mock(CarService.class);
+        AtomicReference<byte[]> committed = new AtomicReference<>();
+        when(carService.attachImageFile(eq(1L), any(Path.class), eq("bmw.jpg"))).thenAnswer(invocation -> {
+            committed.set(Files.readAllBytes(invocation.getArgument(1)));
+            return "http://localhost:8080/uuid-bmw.jpg";
+        });
+        ImageUploadService service = new ImageUploadService(carService, tempDir.toString(), 1_000_000, 60);
+        String uploadId = service.createSession(1L, "bmw.jpg", content.length).getUploadId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // повтор первой части: отдал 100 000 байт и ждет
+        PausingInputStream slow = new PausingInputStream(Arrays.copyOfRange(content, 0, 200_000), 100_000);
+        Future<ImageUploadStatusDto> retry = executor.submit(() -> service.writeChunk(1L, uploadId, 0, slow));
+        slow.paused.await();
+        Future<ImageUploadStatusDto> whole = executor.submit(() ->
+                service.writeChunk(1L, uploadId, 0, new ByteArrayInputStream(content)));
+
+        Thread.sleep(200);
+        verify(carService, never()).attachImageFile(any(), any(), any());
+        slow.resume.countDown();
+
+        assertThat(whole.get().getImageUrl()).isEqualTo("http://localhost:8080/uuid-bmw.jpg");
+        assertThat(retry.get().getImageUrl()).isEqualTo("http://localhost:8080/uuid-bmw.jpg");
+        executor.shutdown();
+        assertThat(committed.get()).isEqualTo(content);
+        verify(carService).attachImageFile(eq(1L), any(Path.class), eq("bmw.jpg"));
+    }
+
+    @Test
+    @DisplayName("session with a chunk being written is not removed as abandoned")
+    void shouldKeepSessionWithActiveWriter() throws Exception {
+        ImageUploadService service = new ImageUploadService(mock(CarService.class), tempDir.toString(), 1_000_000, 0);
+        String uploadId = service.createSession(1L, "bmw.jpg", 1000).getUploadId();
+        PausingInputStream slow = new PausingInputStream(new byte[500], 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<ImageUploadStatusDto> chunk = executor.submit(() -> service.writeChunk(1L, uploadId, 0, slow));
+        slow.paused.await();
+        Thread.sleep(5);
+
+        service.removeExpiredSessions();
+
+        assertThat(service.getStatus(1L, uploadId)).isNotNull();
+        slow.resume.countDown();
+        assertThat(chunk.get().getReceived()).isEqualTo(500);
+        executor.shutdown();
+
+        Thread.sleep(5);
+        service.removeExpiredSessions();
+        assertThat(service.getStatus(1L, uploadId)).isNull();
+    }
+
+    /**
+     * Отдает первые pauseAt байт, затем ждет resume и отдает остальное, как медленный клиент
+     */
+    private static class PausingInputStream extends InputStream {
+
+        private final byte[] content;
+        private final int pauseAt;
+        private final CountDownLatch paused = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+        private int position;
+
+        PausingInputStream(byte[] content, int pauseAt) {
+            this.content = content;
+            this.pauseAt = pauseAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position == pauseAt) {
+                paused.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (position >= content.length) {
+                return -1;
+            }
+            int limit = position < pauseAt ? pauseAt : content.length;
+            int count = Math.min(length, limit - position);
+            System.arraycopy(content, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    /**
+     * Отдает первые failAfter байт, затем бросает IOException, как при обрыве соединения
+     */
+    private static class DroppingInputStream extends InputStream {
+
+        private final byte[] content;
+        private final int failAfter;
+        private int position;
+
+        DroppingInputStream(byte[] content, int failAfter) {
+            this.content = content;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= failAfter) {
+                throw new IOException("Connection reset by peer");
+            }
+            int count = Math.min(length, failAfter - position);
+            System.arraycopy(content, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
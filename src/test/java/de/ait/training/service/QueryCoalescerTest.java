@@ -0,0 +1,159 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangeType;
+import de.ait.training.event.CarChangedEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryCoalescerTest {
+
+    @Test
+    @DisplayName("concurrent requests with the same key run the query once and share the result")
+    void shouldRunQueryOnceForSameKey() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int requests = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            results.add(executor.submit(() -> coalescer.execute("color:red", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "result";
+            })));
+        }
+        // ждем, пока все потоки либо выполнят запрос, либо присоединятся к нему
+        while (coalescer.getStats().get("executed") + coalescer.getStats().get("coalesced") < requests) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        }
+        executor.shutdown();
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(coalescer.getStats()).containsEntry("executed", 1L)
+                .containsEntry("coalesced", (long) requests - 1)
+                .containsEntry("inFlight", 0L);
+    }
+
+    @Test
+    @DisplayName("after the query is finished the next request runs it again, errors are not kept")
+    void shouldNotCacheResultsOrErrors() {
+        QueryCoalescer coalescer = new QueryCoalescer(true);
+
+        assertThatThrownBy(() -> coalescer.execute("color:red", () -> {
+            throw new IllegalStateException("db is down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(coalescer.execute("color:red", () -> "ok")).isEqualTo("ok");
+        assertThat(coalescer.getStats()).containsEntry("executed", 2L).containsEntry("coalesced", 0L);
+    }
+
+    @Test
+    @DisplayName("loader throws Error, waiting requests get it instead of hanging, key is released")
+    void shouldReleaseWaitersWhenLoaderThrowsError() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> first = executor.submit(() -> coalescer.execute("color:red", () -> {
+            await(release);
+            throw new StackOverflowError();
+        }));
+        while (coalescer.getStats().get("executed") < 1) {
+            Thread.sleep(5);
+        }
+        Future<String> waiting = executor.submit(() -> coalescer.execute("color:red", () -> "never"));
+        while (coalescer.getStats().get("coalesced") < 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        executor.shutdown();
+
+        assertThat(coalescer.getStats()).containsEntry("inFlight", 0L);
+        assertThat(coalescer.execute("color:red", () -> "ok")).isEqualTo("ok");
+    }
+
+    @Test
+    @DisplayName("request after a committed write does not join a query started before it")
+    void shouldNotJoinQueryStartedBeforeWrite() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(true);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> stale = executor.submit(() -> coalescer.execute("color:red", () -> {
+            await(release);
+            return "before write";
+        }));
+        while (coalescer.getStats().get("executed") < 1) {
+            Thread.sleep(5);
+        }
+        coalescer.onCarChanged(new CarChangedEvent(CarChangeType.UPDATED, 1L, null));
+
+        assertThat(coalescer.execute("color:red", () -> "after write")).isEqualTo("after write");
+        release.countDown();
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isEqualTo("before write");
+        executor.shutdown();
+
+        assertThat(coalescer.getStats()).containsEntry("executed", 2L).containsEntry("coalesced", 0L)
+                .containsEntry("inFlight", 0L);
+    }
+
+    @Test
+    @DisplayName("coalescing disabled, concurrent requests with the same key each run the query")
+    void shouldRunEveryQueryWhenDisabled() throws Exception {
+        QueryCoalescer coalescer = new QueryCoalescer(false);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            results.add(executor.submit(() -> coalescer.execute("color:red", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            })));
+        }
+        // оба запроса одновременно внутри загрузки
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        }
+        executor.shutdown();
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(coalescer.getStats()).containsEntry("executed", 2L).containsEntry("coalesced", 0L);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}